@@ -0,0 +1,67 @@
+
+
+package ed.biodare.test;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Scalar against SIMD dot product at the series lengths we see in practice.
+ * Only built with the vector profile.
+ */
+@Fork(value = 1, jvmArgsAppend = "--add-modules=jdk.incubator.vector")
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class DotKernelBenchmark {
+
+
+
+    @State(Scope.Thread)
+    public static class ExecutionPlan {
+
+        @Param({ "50", "240", "1000" })
+        public int length;
+
+        double[] a;
+        double[] b;
+
+        final DotKernel scalar = new ScalarDotKernel();
+        final DotKernel vector = new VectorDotKernel();
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            Random rnd = new Random(length);
+            a = rnd.doubles(length).toArray();
+            b = rnd.doubles(length).toArray();
+        }
+    }
+
+    @Benchmark
+    public double scalar(ExecutionPlan params) {
+        return params.scalar.dot(params.a, 0, params.b, 0, params.length);
+    }
+
+    @Benchmark
+    public double vector(ExecutionPlan params) {
+        return params.vector.dot(params.a, 0, params.b, 0, params.length);
+    }
+
+    @Benchmark
+    public double selected(ExecutionPlan params) {
+        return DotProducts.dot(params.a, 0, params.b, 0, params.length);
+    }
+}
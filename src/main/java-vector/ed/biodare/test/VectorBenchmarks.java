@@ -0,0 +1,27 @@
+
+
+package ed.biodare.test;
+
+import org.openjdk.jmh.Main;
+
+/**
+ * Entry point of the benchmarks jar built with the vector profile: the JMH
+ * command line with the jdk.incubator.vector module prepended to the jvm args
+ * of every fork. Without it DotProducts falls back to the scalar kernel in any
+ * benchmark whose @Fork does not add the module itself.
+ */
+public final class VectorBenchmarks {
+
+    static final String ADD_VECTOR_MODULE = "--add-modules=jdk.incubator.vector";
+
+    private VectorBenchmarks() {}
+
+    public static void main(String[] args) throws Exception {
+
+        String[] withModule = new String[args.length+2];
+        withModule[0] = "-jvmArgsPrepend";
+        withModule[1] = ADD_VECTOR_MODULE;
+        System.arraycopy(args, 0, withModule, 2, args.length);
+        Main.main(withModule);
+    }
+}
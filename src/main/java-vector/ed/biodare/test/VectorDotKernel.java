@@ -0,0 +1,41 @@
+
+
+package ed.biodare.test;
+
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * SIMD dot product on the incubating Vector API, lanes are accumulated with
+ * fused multiply-add and reduced once at the end, the tail is done scalar.
+ */
+public final class VectorDotKernel implements DotKernel {
+
+    static final VectorSpecies<Double> SPECIES = DoubleVector.SPECIES_PREFERRED;
+
+    @Override
+    public double dot(double[] a, int aOffset, double[] b, int bOffset, int length) {
+
+        DoubleVector acc = DoubleVector.zero(SPECIES);
+        int bound = SPECIES.loopBound(length);
+
+        int i = 0;
+        for (; i < bound; i += SPECIES.length()) {
+            DoubleVector x = DoubleVector.fromArray(SPECIES, a, aOffset+i);
+            DoubleVector y = DoubleVector.fromArray(SPECIES, b, bOffset+i);
+            acc = x.fma(y, acc);
+        }
+
+        double val = acc.reduceLanes(VectorOperators.ADD);
+        for (; i < length; i++) {
+            val += a[aOffset+i] * b[bOffset+i];
+        }
+        return val;
+    }
+
+    @Override
+    public String name() {
+        return "vector"+SPECIES.length();
+    }
+}
@@ -0,0 +1,135 @@
+
+
+package ed.biodare.test;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * Fork/join replacement for the fixed chunk size + FIFO pool approach.
+ *
+ * Ranges are split recursively until they are down to a grain which is derived
+ * from the measured cost per item, so that a leaf takes roughly targetLeafNanos
+ * but there are still a few leaves per worker to steal. The cost estimate is
+ * updated from every finished leaf and kept between calls, so uneven series
+ * (e.g. slowly converging NLLS fits) make the later splits finer.
+ */
+public class AdaptiveChunkScheduler {
+
+    public static final long DEF_TARGET_LEAF_NANOS = 2_000_000;
+    static final int LEAVES_PER_WORKER = 4;
+
+    final ForkJoinPool pool;
+    final long targetLeafNanos;
+
+    /** exponentially weighted cost per item in nanos, 0 when not measured yet */
+    final AtomicLong itemCostNanos = new AtomicLong();
+
+    public AdaptiveChunkScheduler(ForkJoinPool pool) {
+        this(pool, DEF_TARGET_LEAF_NANOS);
+    }
+
+    public AdaptiveChunkScheduler(ForkJoinPool pool, long targetLeafNanos) {
+        if (targetLeafNanos < 1) throw new IllegalArgumentException("Target leaf time must be positive not: "+targetLeafNanos);
+        this.pool = pool;
+        this.targetLeafNanos = targetLeafNanos;
+    }
+
+    /**
+     * Applies chunkFn to consecutive sub lists of items, chunkFn must return one
+     * result per item of its input. Results are returned in the input order.
+     */
+    public <T,R> List<R> map(List<T> items, Function<List<T>, List<R>> chunkFn) {
+
+        Object[] results = new Object[items.size()];
+        if (items.isEmpty()) return List.of();
+
+        pool.invoke(new RangeTask<>(items, 0, items.size(), chunkFn, results));
+
+        @SuppressWarnings("unchecked")
+        List<R> list = (List<R>) Arrays.asList(results);
+        return list;
+    }
+
+    public long itemCostNanos() {
+        return itemCostNanos.get();
+    }
+
+    int grain(int size) {
+
+        int maxGrain = Math.max(1, size / (pool.getParallelism()*LEAVES_PER_WORKER));
+        long cost = itemCostNanos.get();
+        if (cost <= 0) return 1;
+
+        long grain = targetLeafNanos / cost;
+        return (int) Math.max(1, Math.min(grain, maxGrain));
+    }
+
+    void recordLeaf(int items, long nanos) {
+
+        long measured = Math.max(1, nanos / items);
+        itemCostNanos.accumulateAndGet(measured, (old, cur) -> old <= 0 ? cur : (3*old+cur) / 4);
+    }
+
+    final class RangeTask<T,R> extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        final List<T> items;
+        final int start;
+        final int end;
+        final Function<List<T>, List<R>> chunkFn;
+        final Object[] results;
+        RangeTask<T,R> next;
+
+        RangeTask(List<T> items, int start, int end, Function<List<T>, List<R>> chunkFn, Object[] results) {
+            this.items = items;
+            this.start = start;
+            this.end = end;
+            this.chunkFn = chunkFn;
+            this.results = results;
+        }
+
+        @Override
+        protected void compute() {
+
+            int lo = start;
+            int hi = end;
+            RangeTask<T,R> forked = null;
+
+            // a cold scheduler has grain 1, so its first leaf is a single item probe
+            while (hi - lo > grain(items.size())) {
+                int mid = (lo + hi) >>> 1;
+                RangeTask<T,R> right = new RangeTask<>(items, mid, hi, chunkFn, results);
+                right.next = forked;
+                forked = right;
+                right.fork();
+                hi = mid;
+            }
+            runLeaf(lo, hi);
+
+            while (forked != null) {
+                forked.join();
+                forked = forked.next;
+            }
+        }
+
+        void runLeaf(int lo, int hi) {
+
+            long sT = System.nanoTime();
+            List<R> res = chunkFn.apply(items.subList(lo, hi));
+            recordLeaf(hi - lo, System.nanoTime() - sT);
+
+            if (res.size() != hi - lo) {
+                throw new IllegalStateException("Chunk returned "+res.size()+" results for "+(hi - lo)+" items");
+            }
+            for (int i = 0; i < res.size(); i++) {
+                results[lo+i] = res.get(i);
+            }
+        }
+    }
+}
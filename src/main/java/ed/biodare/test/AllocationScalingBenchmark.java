@@ -0,0 +1,116 @@
+
+
+package ed.biodare.test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import org.apache.commons.math3.util.Pair;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * The memalloc kernels of MemVsComputationBenchmark and SmallTablesBenchmark, set up
+ * for allocation profiling: data is generated once per trial (so setup garbage does
+ * not count), the pool lives for the trial and the score is throughput, so it can be
+ * divided by the cores in use.
+ *
+ * Run it with -prof gc, or through AllocationScalingRunner which also sweeps the
+ * collector, heap size and threads and prints bytes/op, GC time share and
+ * throughput per core.
+ */
+@Fork(value = 2)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class AllocationScalingBenchmark {
+
+
+
+    @State(Scope.Benchmark)
+    public static class ExecutionPlan {
+
+        @Param({ "1", "2", "4", "8" })
+        public int threads;
+
+        @Param({ "false", "true" })
+        public boolean memalloc;
+
+        int memChunk = 50;
+        int memDataSize = 64*5*memChunk;
+        int memPatternSize = 50;
+
+        int tablesChunk = 25;
+        int tablesDataSize = 64*4*tablesChunk;
+        int tablesPatternSize = 80;
+
+        int length = 50;
+
+        List<double[]> memPatterns;
+        List<double[]> memData;
+        Map<Pair<Integer, Integer>, double[]> tablesPatterns;
+        double[][] tablesData;
+
+        final MemVsComputationBenchmark memVs = new MemVsComputationBenchmark();
+        final SmallTablesBenchmark tables = new SmallTablesBenchmark();
+        ExecutorService pool;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            memPatterns = MemVsComputationBenchmark.makeDatas(memPatternSize, length);
+            memData = MemVsComputationBenchmark.makeDatas(memDataSize, length);
+            tablesPatterns = SmallTablesBenchmark.makePatterns(tablesPatternSize, length);
+            tablesData = SmallTablesBenchmark.makeData(tablesDataSize, length);
+            pool = AnalysisExecutors.newPool(AnalysisExecutors.Kind.FIXED, threads);
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() {
+            pool.shutdown();
+        }
+    }
+
+    @Benchmark
+    public double memVsComputation(ExecutionPlan params, Blackhole blackHole) {
+
+        List<Callable<Double>> tasks = new ArrayList<>();
+        for (List<double[]> part : Chunks.split(params.memData, params.memChunk)) {
+            tasks.add( () -> params.memVs.convolute(part, params.memPatterns, params.memalloc));
+        }
+
+        Pair<Long, Double> res = params.memVs.clockTasks(tasks, params.pool);
+        blackHole.consume(res);
+        return res.getSecond();
+    }
+
+    @Benchmark
+    public double smallTables(ExecutionPlan params, Blackhole blackHole) {
+
+        List<Callable<List<Pair<Pair<Integer,Integer>,Double>>>> tasks = new ArrayList<>();
+        for (int ix = 0; ix < params.tablesData.length; ix+=params.tablesChunk) {
+            final int start = ix;
+            final int end = Math.min(ix+params.tablesChunk, params.tablesData.length);
+            tasks.add( () -> params.tables.calculate(params.tablesData, start, end, params.tablesPatterns, params.memalloc));
+        }
+
+        Pair<Long, Double> res = params.tables.clockTasks(tasks, params.pool);
+        blackHole.consume(res);
+        return res.getSecond();
+    }
+}
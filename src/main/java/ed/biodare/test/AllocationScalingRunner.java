@@ -0,0 +1,112 @@
+
+
+package ed.biodare.test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.Result;
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.openjdk.jmh.runner.options.TimeValue;
+
+/**
+ * Sweeps AllocationScalingBenchmark over collectors, heap sizes and thread counts
+ * with the GC profiler attached, and writes one row per combination with:
+ * bytes/op (gc.alloc.rate.norm), GC time share (gc.time over the measured time)
+ * and throughput per core (ops/s divided by the threads, capped at the cores).
+ *
+ * java -cp target/benchmarks.jar ed.biodare.test.AllocationScalingRunner [gcs] [heaps] [threads] [out.csv]
+ * e.g. G1,Parallel,Z 1g,4g 1,2,4,8 allocation-scaling.csv
+ */
+public class AllocationScalingRunner {
+
+    static final int MEASUREMENT_ITERATIONS = 5;
+    static final int ITERATION_SECONDS = 2;
+
+    public static void main(String[] args) throws RunnerException, IOException {
+
+        String[] gcs = (args.length > 0 ? args[0] : "G1,Parallel,Z").split(",");
+        String[] heaps = (args.length > 1 ? args[1] : "1g,4g").split(",");
+        String[] threads = (args.length > 2 ? args[2] : "1,2,4,8").split(",");
+        Path out = Paths.get(args.length > 3 ? args[3] : "allocation-scaling.csv");
+
+        int cores = Runtime.getRuntime().availableProcessors();
+        List<String> rows = new ArrayList<>();
+        rows.add("benchmark,gc,heap,threads,memalloc,opsPerSec,opsPerSecPerCore,bytesPerOp,gcTimeShare,gcCount");
+
+        for (String gc : gcs) {
+            for (String heap : heaps) {
+                Options opts = new OptionsBuilder()
+                        .include(AllocationScalingBenchmark.class.getName())
+                        .addProfiler(GCProfiler.class)
+                        .param("threads", threads)
+                        .measurementIterations(MEASUREMENT_ITERATIONS)
+                        .measurementTime(TimeValue.seconds(ITERATION_SECONDS))
+                        .jvmArgsAppend(jvmArgs(gc, heap))
+                        .build();
+
+                Collection<RunResult> results = new Runner(opts).run();
+                for (RunResult result : results) {
+                    rows.add(row(result, gc, heap, cores));
+                }
+            }
+        }
+
+        Files.write(out, rows, StandardCharsets.UTF_8);
+        rows.forEach(System.out::println);
+        System.out.println("Written to: "+out.toAbsolutePath());
+    }
+
+    static String[] jvmArgs(String gc, String heap) {
+        switch (gc) {
+            case "G1": return new String[] {"-XX:+UseG1GC", "-Xms"+heap, "-Xmx"+heap};
+            case "Parallel": return new String[] {"-XX:+UseParallelGC", "-Xms"+heap, "-Xmx"+heap};
+            // still experimental on 11
+            case "Z": return new String[] {"-XX:+UnlockExperimentalVMOptions", "-XX:+UseZGC", "-Xms"+heap, "-Xmx"+heap};
+            default: throw new IllegalArgumentException("Unknown gc, use G1, Parallel or Z not: "+gc);
+        }
+    }
+
+    static String row(RunResult result, String gc, String heap, int cores) {
+
+        int threads = Integer.parseInt(result.getParams().getParam("threads"));
+        String memalloc = result.getParams().getParam("memalloc");
+        String benchmark = result.getParams().getBenchmark();
+        benchmark = benchmark.substring(benchmark.lastIndexOf('.')+1);
+
+        double ops = result.getPrimaryResult().getScore();
+        double perCore = ops / Math.min(threads, cores);
+        double bytesPerOp = score(secondary(result, "gc.alloc.rate.norm"), Double.NaN);
+        // gc.time (ms) is summed over all measured iterations of all forks, and missing if no gc happened
+        Result<?> gcTime = secondary(result, "gc.time");
+        double gcShare = gcTime == null ? 0 : gcTime.getScore() / (gcTime.getSampleCount()*ITERATION_SECONDS*1000.0);
+        double gcCount = score(secondary(result, "gc.count"), 0);
+
+        return String.format("%s,%s,%s,%d,%s,%.3f,%.3f,%.1f,%.4f,%.0f",
+                benchmark, gc, heap, threads, memalloc, ops, perCore, bytesPerOp, gcShare, gcCount);
+    }
+
+    static Result<?> secondary(RunResult result, String label) {
+
+        // profiler labels carry a prefix before the gc.* name
+        for (Map.Entry<String, ?> e : result.getSecondaryResults().entrySet()) {
+            if (e.getKey().endsWith(label) && !e.getKey().endsWith("."+label)) return (Result<?>) e.getValue();
+        }
+        return null;
+    }
+
+    static double score(Result<?> result, double missing) {
+        return result == null ? missing : result.getScore();
+    }
+}
@@ -0,0 +1,42 @@
+
+
+package ed.biodare.test;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * Flight recorder event of one analysed chunk, enable ed.biodare.AnalysisChunk
+ * in the recording settings to collect it.
+ */
+@Name("ed.biodare.AnalysisChunk")
+@Label("Analysis Chunk")
+@Category({"BioDare", "Analysis"})
+@Description("One chunk of series analysed by a worker")
+@StackTrace(false)
+class AnalysisChunkEvent extends Event {
+
+    @Label("Method")
+    String method;
+
+    @Label("Items")
+    int items;
+
+    @Label("Queue Wait")
+    @Timespan(Timespan.NANOSECONDS)
+    long queueWait;
+
+    @Label("Compute Time")
+    @Timespan(Timespan.NANOSECONDS)
+    long computeTime;
+
+    @Label("Allocated")
+    @DataAmount(DataAmount.BYTES)
+    long allocated;
+}
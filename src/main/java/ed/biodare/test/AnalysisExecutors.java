@@ -0,0 +1,106 @@
+
+
+package ed.biodare.test;
+
+import java.lang.reflect.Method;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Long lived executors that can be shared between analysis calls, so that
+ * short jobs do not pay for thread creation and teardown on every call.
+ *
+ * Shared pools are created lazily per kind and size, use daemon threads
+ * and are closed on JVM exit.
+ */
+public final class AnalysisExecutors {
+
+    public enum Kind {
+        FIXED,
+        WORK_STEALING,
+        VIRTUAL
+    }
+
+    static final Map<String, ExecutorService> SHARED = new ConcurrentHashMap<>();
+
+    static {
+        Runtime.getRuntime().addShutdownHook(new Thread(AnalysisExecutors::shutdownAll, "analysis-executors-shutdown"));
+    }
+
+    private AnalysisExecutors() {}
+
+    public static ExecutorService shared(Kind kind, int threads) {
+
+        String key = kind+":"+(kind == Kind.VIRTUAL ? 0 : threads);
+        return SHARED.computeIfAbsent(key, k -> newPool(kind, threads, true));
+    }
+
+    public static ExecutorService newPool(Kind kind, int threads) {
+        return newPool(kind, threads, false);
+    }
+
+    static ExecutorService newPool(Kind kind, int threads, boolean daemon) {
+
+        if (threads < 1) throw new IllegalArgumentException("Threads must be positive not: "+threads);
+
+        switch (kind) {
+            case FIXED: return Executors.newFixedThreadPool(threads, threadFactory("analysis-fixed", daemon));
+            case WORK_STEALING: return Executors.newWorkStealingPool(threads);
+            case VIRTUAL: return newVirtualPool();
+            default: throw new IllegalArgumentException("Unsupported pool kind: "+kind);
+        }
+    }
+
+    /**
+     * Virtual threads need JDK 21+, the factory method is looked up reflectively
+     * so the project still compiles for the default javac target.
+     */
+    static ExecutorService newVirtualPool() {
+
+        try {
+            Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) factory.invoke(null);
+        } catch (ReflectiveOperationException e) {
+            throw new UnsupportedOperationException("Virtual threads are not supported by JVM: "+System.getProperty("java.version"), e);
+        }
+    }
+
+    public static boolean virtualThreadsSupported() {
+
+        try {
+            Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return true;
+        } catch (NoSuchMethodException e) {
+            return false;
+        }
+    }
+
+    static ThreadFactory threadFactory(String prefix, boolean daemon) {
+
+        AtomicInteger counter = new AtomicInteger();
+        return (Runnable r) -> {
+            Thread t = new Thread(r, prefix+"-"+counter.incrementAndGet());
+            t.setDaemon(daemon);
+            return t;
+        };
+    }
+
+    static void shutdownAll() {
+
+        SHARED.values().forEach(ExecutorService::shutdown);
+        for (ExecutorService pool : SHARED.values()) {
+            try {
+                if (!pool.awaitTermination(1, TimeUnit.SECONDS)) pool.shutdownNow();
+            } catch (InterruptedException e) {
+                pool.shutdownNow();
+                Thread.currentThread().interrupt();
+            }
+        }
+        SHARED.clear();
+    }
+}
@@ -0,0 +1,39 @@
+
+
+package ed.biodare.test;
+
+/**
+ * Receiver of per chunk measurements of the chunked analysers: time the chunk
+ * waited in the pool queue, time it computed, bytes the worker allocated for it.
+ * Called by the worker thread, so implementations must be thread safe and cheap.
+ */
+public interface AnalysisMetrics {
+
+    AnalysisMetrics NOOP = new AnalysisMetrics() {
+        @Override
+        public boolean enabled() {
+            return false;
+        }
+
+        @Override
+        public void chunk(String method, int items, long queueNanos, long computeNanos, long allocatedBytes) {
+        }
+    };
+
+    /**
+     * When false the analysers skip taking the measurements altogether.
+     */
+    default boolean enabled() {
+        return true;
+    }
+
+    void chunk(String method, int items, long queueNanos, long computeNanos, long allocatedBytes);
+
+    default AnalysisMetrics and(AnalysisMetrics other) {
+        AnalysisMetrics self = this;
+        return (method, items, queueNanos, computeNanos, allocatedBytes) -> {
+            self.chunk(method, items, queueNanos, computeNanos, allocatedBytes);
+            other.chunk(method, items, queueNanos, computeNanos, allocatedBytes);
+        };
+    }
+}
@@ -0,0 +1,36 @@
+
+
+package ed.biodare.test;
+
+/**
+ * Best matching pattern and its score per data row, as parallel primitive arrays.
+ * Chunks write to disjoint row ranges so one instance can be shared by all workers.
+ */
+public final class BestMatches {
+
+    final int[] pattern;
+    final double[] value;
+
+    public BestMatches(int rows) {
+        this.pattern = new int[rows];
+        this.value = new double[rows];
+    }
+
+    public int size() {
+        return pattern.length;
+    }
+
+    public int pattern(int row) {
+        return pattern[row];
+    }
+
+    public double value(int row) {
+        return value[row];
+    }
+
+    public double sum() {
+        double val = 0;
+        for (double v : value) val += v;
+        return val;
+    }
+}
@@ -0,0 +1,59 @@
+
+
+package ed.biodare.test;
+
+import ed.biodare.period.PPAMultiAnalyser;
+import ed.robust.dom.data.TimeSeries;
+import ed.robust.dom.tsprocessing.PPAResult;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Front of a multi analyser which only sends the series without a cached result
+ * for the same content, method and period range to the analysis.
+ */
+public class CachingPPAAnalyser {
+
+    final PPAMultiAnalyser analyser;
+    final String method;
+    final PPAResultCache cache;
+
+    public CachingPPAAnalyser(PPAMultiAnalyser analyser, String method, PPAResultCache cache) {
+        this.analyser = analyser;
+        this.method = method;
+        this.cache = cache;
+    }
+
+    public List<PPAResult> analyse(List<TimeSeries> data, double periodMin, double periodMax, int chunkSize, int threads) {
+
+        List<PPAResult> results = new ArrayList<>(data.size());
+        List<PPAResultCache.Key> keys = new ArrayList<>(data.size());
+        List<TimeSeries> missing = new ArrayList<>();
+        List<Integer> missingIx = new ArrayList<>();
+
+        for (int i = 0; i < data.size(); i++) {
+            PPAResultCache.Key key = new PPAResultCache.Key(SeriesFingerprint.of(data.get(i)), method, periodMin, periodMax);
+            PPAResult cached = cache.get(key);
+            keys.add(key);
+            results.add(cached);
+            if (cached == null) {
+                missing.add(data.get(i));
+                missingIx.add(i);
+            }
+        }
+
+        if (!missing.isEmpty()) {
+            List<PPAResult> computed = analyser.analyse(missing, periodMin, periodMax, chunkSize, threads);
+            // results are matched to the inputs by position, as the analysers return them in input order
+            if (computed.size() != missing.size()) {
+                throw new IllegalStateException("Expected "+missing.size()+" results from "+method+" not: "+computed.size());
+            }
+            for (int i = 0; i < computed.size(); i++) {
+                int ix = missingIx.get(i);
+                results.set(ix, computed.get(i));
+                cache.put(keys.get(ix), computed.get(i));
+            }
+        }
+        return results;
+    }
+}
@@ -0,0 +1,146 @@
+
+
+package ed.biodare.test;
+
+import ed.biodare.period.fft_nlls.FFTMultiAnalyser2;
+import ed.robust.dom.data.TimeSeries;
+import ed.robust.dom.tsprocessing.PPAResult;
+import ed.robust.error.RobustFormatException;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Stopping a long FFT-NLLS job early, by cancelling it from another thread or by
+ * its deadline, stopAfterMs into the job.
+ *
+ * Aux counters (summed, divide by invocations): returnMicros from the stop to the
+ * partial results being returned, freedMicros from the stop until no worker of
+ * the pool is busy, chunkMicros the mean time of one chunk on one worker (measured
+ * at setup) which freedMicros should stay below, completedSeries the partial size.
+ */
+@Fork(1)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class CancellationBenchmark {
+
+
+
+    @State(Scope.Benchmark)
+    public static class ExecutionPlan {
+
+        @Param({ "4", "8" })
+        public int threads;
+
+        @Param({ "200" })
+        public int stopAfterMs;
+
+        public int chunkSize = 10;
+        public int dataSize = 64*5*10*4;
+        public double periodMin = 18;
+        public double periodMax = 36;
+
+        List<TimeSeries> data;
+        ThreadPoolExecutor pool;
+        SharedPPAAnalyser analyser;
+        ScheduledExecutorService canceller;
+        long chunkNanos;
+
+        @Setup(Level.Trial)
+        public void setUp() throws RobustFormatException, IOException {
+            data = new PPABenchmark.ExecutionPlan().readTSData(dataSize);
+            pool = (ThreadPoolExecutor) AnalysisExecutors.newPool(AnalysisExecutors.Kind.FIXED, threads);
+            analyser = new SharedPPAAnalyser(pool, () -> new FFTMultiAnalyser2(1));
+            canceller = Executors.newSingleThreadScheduledExecutor();
+
+            FFTMultiAnalyser2 single = new FFTMultiAnalyser2(1);
+            List<TimeSeries> chunk = data.subList(0, chunkSize);
+            for (int i = 0; i < 5; i++) single.analyse(chunk, periodMin, periodMax, chunkSize, 1);
+            long sT = System.nanoTime();
+            for (int i = 0; i < 10; i++) single.analyse(chunk, periodMin, periodMax, chunkSize, 1);
+            chunkNanos = (System.nanoTime() - sT) / 10;
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() {
+            pool.shutdown();
+            canceller.shutdown();
+        }
+    }
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class StopCounters {
+
+        public long returnMicros;
+        public long freedMicros;
+        public long chunkMicros;
+        public long completedSeries;
+        public long invocations;
+
+        void stopped(long stopNanos, ThreadPoolExecutor pool, PartialResults<?> results, long chunkNanos) {
+            long returned = System.nanoTime();
+            while (pool.getActiveCount() > 0) Thread.onSpinWait();
+            long freed = System.nanoTime();
+
+            returnMicros += (returned - stopNanos) / 1000;
+            freedMicros += (freed - stopNanos) / 1000;
+            chunkMicros += chunkNanos / 1000;
+            completedSeries += results.completed();
+            invocations++;
+        }
+    }
+
+    @Benchmark
+    public PartialResults<PPAResult> cancel(ExecutionPlan params, StopCounters counters, Blackhole blackHole) {
+
+        JobControl control = JobControl.unlimited();
+        AtomicLong stop = new AtomicLong();
+        params.canceller.schedule( () -> {
+            stop.set(System.nanoTime());
+            control.cancel();
+        }, params.stopAfterMs, TimeUnit.MILLISECONDS);
+
+        PartialResults<PPAResult> results = params.analyser.analyse(params.data, params.periodMin, params.periodMax, params.chunkSize, control);
+        if (results.isComplete()) throw new IllegalStateException("Job finished before cancel, increase dataSize");
+        counters.stopped(stop.get(), params.pool, results, params.chunkNanos);
+
+        blackHole.consume(results);
+        return results;
+    }
+
+    @Benchmark
+    public PartialResults<PPAResult> deadline(ExecutionPlan params, StopCounters counters, Blackhole blackHole) {
+
+        JobControl control = JobControl.withTimeout(params.stopAfterMs, TimeUnit.MILLISECONDS);
+        long stop = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(params.stopAfterMs);
+
+        PartialResults<PPAResult> results = params.analyser.analyse(params.data, params.periodMin, params.periodMax, params.chunkSize, control);
+        if (results.isComplete()) throw new IllegalStateException("Job finished before deadline, increase dataSize");
+        counters.stopped(stop, params.pool, results, params.chunkNanos);
+
+        blackHole.consume(results);
+        return results;
+    }
+}
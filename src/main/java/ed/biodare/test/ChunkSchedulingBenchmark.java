@@ -0,0 +1,216 @@
+
+
+package ed.biodare.test;
+
+import ed.biodare.period.PPAMultiAnalyser;
+import ed.biodare.period.fft_nlls.FFTMultiAnalyser2;
+import ed.robust.dom.data.TimeSeries;
+import ed.robust.dom.tsprocessing.PPAResult;
+import ed.robust.error.RobustFormatException;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Fixed size chunks on a FIFO pool against the adaptive fork/join scheduler, for
+ * a synthetic workload with skewed per item cost and for FFT-NLLS.
+ *
+ * Both sides run on warm pools with one single threaded analyser per worker.
+ * Throughput and sampled batch times (p50..p99) come from JMH, the idle tail
+ * (how long the first worker to run out of work waits for the last one) is
+ * reported as the tailMicros/batches aux counters. JMH keeps aux counters only
+ * in the Throughput and AverageTime modes, so they are missing from the
+ * SampleTime results; read them from the Throughput ones.
+ */
+@Fork(1)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class ChunkSchedulingBenchmark {
+
+
+
+    @State(Scope.Benchmark)
+    public static class ExecutionPlan {
+
+        @Param({ "1", "4", "8" })
+        public int threads;
+
+        @Param({ "10" })
+        public int chunkSize = 10;
+
+        /** fraction of items which are expensive */
+        @Param({ "0.1" })
+        public double skew = 0.1;
+        int slowFactor = 20;
+        int itemsSize = 64*5*10;
+        int length = 50;
+
+        public int dataSize = 64*3*10;
+        public double periodMin = 18;
+        public double periodMax = 36;
+
+        List<double[]> items;
+        List<TimeSeries> series;
+
+        ExecutorService fixedPool;
+        ForkJoinPool forkJoinPool;
+        AdaptiveChunkScheduler scheduler;
+        ThreadLocal<PPAMultiAnalyser> analysers;
+
+        @Setup(Level.Trial)
+        public void setUp() throws RobustFormatException, IOException {
+            items = makeSkewedItems(itemsSize, length, skew, slowFactor);
+            series = new PPABenchmark.ExecutionPlan().readTSData(dataSize);
+
+            fixedPool = AnalysisExecutors.newPool(AnalysisExecutors.Kind.FIXED, threads);
+            forkJoinPool = new ForkJoinPool(threads);
+            scheduler = new AdaptiveChunkScheduler(forkJoinPool);
+            analysers = ThreadLocal.withInitial(() -> new FFTMultiAnalyser2(1));
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() {
+            fixedPool.shutdown();
+            forkJoinPool.shutdown();
+        }
+    }
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class TailCounters {
+
+        public long tailMicros;
+        public long batches;
+
+        final Map<Thread, Long> lastFinish = new ConcurrentHashMap<>();
+
+        void finished() {
+            lastFinish.put(Thread.currentThread(), System.nanoTime());
+        }
+
+        void batchDone() {
+            long first = lastFinish.values().stream().mapToLong(Long::longValue).min().orElse(0);
+            long last = lastFinish.values().stream().mapToLong(Long::longValue).max().orElse(0);
+            tailMicros += (last - first) / 1000;
+            batches++;
+            lastFinish.clear();
+        }
+    }
+
+    @Benchmark
+    public List<Double> skewedFixedChunks(ExecutionPlan params, TailCounters tail, Blackhole blackHole) {
+
+        List<Callable<List<Double>>> tasks = new ArrayList<>();
+        for (List<double[]> part : Chunks.split(params.items, params.chunkSize)) {
+            tasks.add( () -> {
+                List<Double> res = work(part);
+                tail.finished();
+                return res;
+            });
+        }
+
+        List<Double> results = Chunks.runInOrder(params.fixedPool, tasks);
+        tail.batchDone();
+        blackHole.consume(results);
+        return results;
+    }
+
+    @Benchmark
+    public List<Double> skewedAdaptive(ExecutionPlan params, TailCounters tail, Blackhole blackHole) {
+
+        List<Double> results = params.scheduler.map(params.items, part -> {
+            List<Double> res = work(part);
+            tail.finished();
+            return res;
+        });
+        tail.batchDone();
+        blackHole.consume(results);
+        return results;
+    }
+
+    @Benchmark
+    public List<PPAResult> fftFixedChunks(ExecutionPlan params, TailCounters tail, Blackhole blackHole) {
+
+        List<Callable<List<PPAResult>>> tasks = new ArrayList<>();
+        for (List<TimeSeries> part : Chunks.split(params.series, params.chunkSize)) {
+            tasks.add( () -> {
+                List<PPAResult> res = params.analysers.get().analyse(part, params.periodMin, params.periodMax, part.size(), 1);
+                tail.finished();
+                return res;
+            });
+        }
+
+        List<PPAResult> results = Chunks.runInOrder(params.fixedPool, tasks);
+        tail.batchDone();
+        blackHole.consume(results);
+        return results;
+    }
+
+    @Benchmark
+    public List<PPAResult> fftAdaptive(ExecutionPlan params, TailCounters tail, Blackhole blackHole) {
+
+        List<PPAResult> results = params.scheduler.map(params.series, part -> {
+            List<PPAResult> res = params.analysers.get().analyse(part, params.periodMin, params.periodMax, part.size(), 1);
+            tail.finished();
+            return res;
+        });
+        tail.batchDone();
+        blackHole.consume(results);
+        return results;
+    }
+
+    static List<Double> work(List<double[]> part) {
+
+        List<Double> res = new ArrayList<>(part.size());
+        for (double[] row : part) {
+            // first cell carries the cost factor of the item
+            int repeats = (int) row[0];
+            double val = 0;
+            for (int r = 0; r < repeats; r++) {
+                for (int i = 1; i < row.length; i++) {
+                    val += Math.cos(row[i]+r);
+                }
+            }
+            res.add(val);
+        }
+        return res;
+    }
+
+    static List<double[]> makeSkewedItems(int count, int length, double skew, int slowFactor) {
+
+        Random rnd = new Random(count);
+        List<double[]> items = new ArrayList<>(count);
+
+        for (int i = 0; i < count; i++) {
+            double[] row = new double[length+1];
+            row[0] = rnd.nextDouble() < skew ? slowFactor : 1;
+            for (int k = 1; k < row.length; k++) row[k] = rnd.nextDouble()*100;
+            items.add(row);
+        }
+        return items;
+    }
+}
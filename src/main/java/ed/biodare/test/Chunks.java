@@ -0,0 +1,135 @@
+
+
+package ed.biodare.test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Splitting of input into chunks and running the chunk tasks on a (possibly shared) pool.
+ * The pool is never shut down here, it belongs to the caller.
+ */
+final class Chunks {
+
+    private Chunks() {}
+
+    static <T> List<List<T>> split(List<T> items, int chunkSize) {
+
+        if (chunkSize < 1) throw new IllegalArgumentException("Chunk size must be positive not: "+chunkSize);
+
+        List<List<T>> chunks = new ArrayList<>((items.size()+chunkSize-1)/chunkSize);
+        for (int ix = 0; ix < items.size(); ix+=chunkSize) {
+            chunks.add(items.subList(ix, Math.min(ix+chunkSize, items.size())));
+        }
+        return chunks;
+    }
+
+    static <R> List<R> runInOrder(ExecutorService pool, List<Callable<List<R>>> tasks) {
+
+        List<Future<List<R>>> futures = new ArrayList<>(tasks.size());
+        for (Callable<List<R>> task : tasks) {
+            futures.add(pool.submit(task));
+        }
+
+        List<R> results = new ArrayList<>();
+        try {
+            for (Future<List<R>> f : futures) {
+                results.addAll(f.get());
+            }
+            return results;
+        } catch (InterruptedException| ExecutionException e) {
+            futures.forEach( f -> f.cancel(true));
+            if (e instanceof InterruptedException) Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted analysis in parallel "+e.getMessage(),e);
+        }
+    }
+
+    /**
+     * Runs the chunk tasks until all are done or the job is stopped. Chunks not
+     * started by then are skipped and the ones running are not waited for, so the
+     * pool is free again within one chunk's time.
+     *
+     * @param chunkStarts index of the first item of every chunk
+     * @param items total number of items
+     */
+    static <R> PartialResults<R> runControlled(ExecutorService pool, List<Callable<List<R>>> tasks,
+            int[] chunkStarts, int items, JobControl control) {
+
+        BlockingQueue<Future<ChunkResult<R>>> done = new LinkedBlockingQueue<>();
+        ExecutorCompletionService<ChunkResult<R>> completion = new ExecutorCompletionService<>(pool, done);
+
+        // wakes the collector when cancelled from another thread
+        FutureTask<ChunkResult<R>> wakeUp = new FutureTask<>(() -> null);
+        Runnable onCancel = () -> done.offer(wakeUp);
+        control.addCancelListener(onCancel);
+
+        List<Future<ChunkResult<R>>> futures = new ArrayList<>(tasks.size());
+        List<R> results = new ArrayList<>(Collections.nCopies(items, (R) null));
+        int completed = 0;
+        try {
+            for (int i = 0; i < tasks.size(); i++) {
+                final int chunk = i;
+                Callable<List<R>> task = tasks.get(i);
+                futures.add(completion.submit( () -> control.shouldStop() ? null : new ChunkResult<>(chunk, task.call())));
+            }
+
+            int pending = futures.size();
+            while (pending > 0 && !control.shouldStop()) {
+                long wait = control.remainingNanos();
+                Future<ChunkResult<R>> f = wait == Long.MAX_VALUE ? done.take() : done.poll(wait, TimeUnit.NANOSECONDS);
+                if (f == null || f == wakeUp) continue;
+                pending--;
+                ChunkResult<R> res = f.get();
+                if (res == null) continue;
+                completed += place(res, chunkStarts, results);
+            }
+
+            if (pending > 0) {
+                futures.forEach( f -> f.cancel(false));
+                // keep what finished meanwhile
+                Future<ChunkResult<R>> f;
+                while ((f = done.poll()) != null) {
+                    if (f == wakeUp || f.isCancelled()) continue;
+                    ChunkResult<R> res = f.get();
+                    if (res != null) completed += place(res, chunkStarts, results);
+                }
+            }
+            // chunks skipped by the workers once stopped count as done in pending
+            PartialResults.Status status = completed == items ? PartialResults.Status.COMPLETE : control.stopStatus();
+            return new PartialResults<>(results, completed, status);
+        } catch (InterruptedException| ExecutionException e) {
+            futures.forEach( f -> f.cancel(true));
+            if (e instanceof InterruptedException) Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted analysis in parallel "+e.getMessage(),e);
+        } finally {
+            control.removeCancelListener(onCancel);
+        }
+    }
+
+    static <R> int place(ChunkResult<R> res, int[] chunkStarts, List<R> results) {
+        int start = chunkStarts[res.chunk];
+        for (int i = 0; i < res.results.size(); i++) results.set(start+i, res.results.get(i));
+        return res.results.size();
+    }
+
+    static final class ChunkResult<R> {
+
+        final int chunk;
+        final List<R> results;
+
+        ChunkResult(int chunk, List<R> results) {
+            this.chunk = chunk;
+            this.results = results;
+        }
+    }
+}
@@ -0,0 +1,222 @@
+
+
+package ed.biodare.test;
+
+import ed.robust.dom.data.TimeSeries;
+import ed.robust.dom.util.Pair;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.AbstractList;
+import java.util.List;
+import java.util.RandomAccess;
+
+/**
+ * Binary columnar store of series, written once and read back through a read only
+ * memory mapping, so loading does no parsing and no copying.
+ *
+ * Layout (little endian):
+ * header: magic, version, series count, reserved (4 ints)
+ * index: per series the byte offset of its data (long) and its length (int), padded to 16 bytes
+ * data: per series its times followed by its values, as contiguous doubles
+ *
+ * The whole file is mapped at once, so a store is limited to 2GB.
+ */
+public class ColumnarSeriesStore implements Closeable {
+
+    static final int MAGIC = 0x42445453;
+    static final int VERSION = 1;
+    static final int HEADER_BYTES = 16;
+    static final int INDEX_ENTRY_BYTES = 16;
+
+    final FileChannel channel;
+    final MappedByteBuffer mapped;
+    final int size;
+
+    ColumnarSeriesStore(FileChannel channel, MappedByteBuffer mapped) throws IOException {
+        this.channel = channel;
+        this.mapped = mapped;
+        mapped.order(ByteOrder.LITTLE_ENDIAN);
+
+        if (mapped.getInt(0) != MAGIC) throw new IOException("Not a series store");
+        if (mapped.getInt(4) != VERSION) throw new IOException("Unsupported store version: "+mapped.getInt(4));
+        this.size = mapped.getInt(8);
+    }
+
+    public static ColumnarSeriesStore open(Path file) throws IOException {
+
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+        try {
+            if (channel.size() > Integer.MAX_VALUE) throw new IOException("Store too large to map: "+channel.size());
+            MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            return new ColumnarSeriesStore(channel, mapped);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    public static void write(List<TimeSeries> series, Path file) throws IOException {
+
+        writeColumns(new AbstractList<double[][]>() {
+            @Override
+            public double[][] get(int index) {
+                Pair<double[], double[]> tv = series.get(index).getTimesAndValues();
+                return new double[][] {tv.getLeft(), tv.getRight()};
+            }
+
+            @Override
+            public int size() {
+                return series.size();
+            }
+        }, file);
+    }
+
+    /**
+     * Writes rows sharing the same times, e.g. the JTK data matrix.
+     */
+    public static void write(double[][] rows, double[] times, Path file) throws IOException {
+
+        writeColumns(new AbstractList<double[][]>() {
+            @Override
+            public double[][] get(int index) {
+                return new double[][] {times, rows[index]};
+            }
+
+            @Override
+            public int size() {
+                return rows.length;
+            }
+        }, file);
+    }
+
+    static void writeColumns(List<double[][]> timesAndValues, Path file) throws IOException {
+
+        int count = timesAndValues.size();
+        try (FileChannel out = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+
+            ByteBuffer head = ByteBuffer.allocate(HEADER_BYTES+INDEX_ENTRY_BYTES*count).order(ByteOrder.LITTLE_ENDIAN);
+            head.putInt(MAGIC).putInt(VERSION).putInt(count).putInt(0);
+
+            long offset = head.capacity();
+            for (double[][] tv : timesAndValues) {
+                int length = tv[0].length;
+                if (tv[1].length != length) throw new IllegalArgumentException("Times and values length mismatch: "+length+"!="+tv[1].length);
+                head.putLong(offset).putInt(length).putInt(0);
+                offset += 16L*length;
+            }
+            head.flip();
+            while (head.hasRemaining()) out.write(head);
+
+            ByteBuffer block = ByteBuffer.allocate(1 << 16).order(ByteOrder.LITTLE_ENDIAN);
+            for (double[][] tv : timesAndValues) {
+                for (double[] column : tv) {
+                    for (double d : column) {
+                        if (!block.hasRemaining()) flush(block, out);
+                        block.putDouble(d);
+                    }
+                }
+            }
+            flush(block, out);
+        }
+    }
+
+    static void flush(ByteBuffer block, FileChannel out) throws IOException {
+        block.flip();
+        while (block.hasRemaining()) out.write(block);
+        block.clear();
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int length(int series) {
+        return mapped.getInt(indexEntry(series)+8);
+    }
+
+    /**
+     * Zero copy read only view of the series times.
+     */
+    public DoubleBuffer times(int series) {
+        return column(series, 0);
+    }
+
+    /**
+     * Zero copy read only view of the series values.
+     */
+    public DoubleBuffer values(int series) {
+        return column(series, 1);
+    }
+
+    public TimeSeries timeSeries(int series) {
+
+        int length = length(series);
+        double[] times = new double[length];
+        double[] values = new double[length];
+        times(series).get(times);
+        values(series).get(values);
+        return new TimeSeries(times, values);
+    }
+
+    /**
+     * List which materializes TimeSeries only when accessed, so chunks handed to
+     * the analysers are converted by the worker threads and the full list is never held.
+     */
+    public List<TimeSeries> asTimeSeries() {
+        return new TimeSeriesList();
+    }
+
+    public double[][] valuesMatrix() {
+
+        double[][] rows = new double[size][];
+        for (int i = 0; i < size; i++) {
+            rows[i] = new double[length(i)];
+            values(i).get(rows[i]);
+        }
+        return rows;
+    }
+
+    @Override
+    public void close() throws IOException {
+        // the mapping itself is released when the buffer is collected
+        channel.close();
+    }
+
+    int indexEntry(int series) {
+        if (series < 0 || series >= size) throw new IndexOutOfBoundsException("Series "+series+" of "+size);
+        return HEADER_BYTES + INDEX_ENTRY_BYTES*series;
+    }
+
+    DoubleBuffer column(int series, int column) {
+
+        int entry = indexEntry(series);
+        long offset = mapped.getLong(entry);
+        int length = mapped.getInt(entry+8);
+
+        ByteBuffer view = mapped.duplicate();
+        view.position((int) (offset + 8L*length*column));
+        view.limit(view.position() + 8*length);
+        // mapping is read only, so are its slices
+        return view.slice().order(ByteOrder.LITTLE_ENDIAN).asDoubleBuffer();
+    }
+
+    final class TimeSeriesList extends AbstractList<TimeSeries> implements RandomAccess {
+
+        @Override
+        public TimeSeries get(int index) {
+            return timeSeries(index);
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+    }
+}
@@ -0,0 +1,179 @@
+
+
+package ed.biodare.test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Draining futures in submission order (as clockTasks does) against collecting
+ * them as they complete.
+ *
+ * The skewed runs have slow chunks spread at random plus a slow first chunk, the
+ * worst case for in order draining; the time until the first result is handed to
+ * the caller is the firstResultMicros aux counter (summed, divide by invocations).
+ * The trivial runs have many near empty chunks and show the aggregation overhead.
+ */
+@Fork(1)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class CompletionAggregationBenchmark {
+
+
+
+    @State(Scope.Benchmark)
+    public static class ExecutionPlan {
+
+        @Param({ "1", "4", "8" })
+        public int threads;
+
+        @Param({ "10" })
+        public int chunkSize = 10;
+
+        @Param({ "0.1" })
+        public double skew = 0.1;
+
+        int slowFactor = 20;
+        int itemsSize = 64*5*10;
+        int length = 50;
+        int trivialTasks = 10000;
+
+        List<double[]> items;
+        ExecutorService pool;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            items = ChunkSchedulingBenchmark.makeSkewedItems(itemsSize, length, skew, slowFactor);
+            for (int i = 0; i < chunkSize; i++) items.get(i)[0] = slowFactor;
+            pool = AnalysisExecutors.newPool(AnalysisExecutors.Kind.FIXED, threads);
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() {
+            pool.shutdown();
+        }
+    }
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class FirstResultCounters {
+
+        public long firstResultMicros;
+        public long invocations;
+
+        void firstResult(long start) {
+            firstResultMicros += (System.nanoTime() - start) / 1000;
+            invocations++;
+        }
+    }
+
+    @Benchmark
+    public double skewedInOrder(ExecutionPlan params, FirstResultCounters counters, Blackhole blackHole) {
+
+        long start = System.nanoTime();
+        List<Future<List<Double>>> futures = new ArrayList<>();
+        for (List<double[]> part : Chunks.split(params.items, params.chunkSize)) {
+            futures.add(params.pool.submit( () -> ChunkSchedulingBenchmark.work(part)));
+        }
+
+        double val = 0;
+        boolean first = true;
+        for (Future<List<Double>> f : futures) {
+            List<Double> res = get(f);
+            if (first) {
+                counters.firstResult(start);
+                first = false;
+            }
+            blackHole.consume(res);
+            val += res.stream().mapToDouble(Double::doubleValue).sum();
+        }
+        return val;
+    }
+
+    @Benchmark
+    public double skewedCompletion(ExecutionPlan params, FirstResultCounters counters, Blackhole blackHole) {
+
+        long start = System.nanoTime();
+        CompletionAggregator<List<Double>> aggregator = new CompletionAggregator<>(params.pool, CompletionAggregationBenchmark::sum);
+        for (List<double[]> part : Chunks.split(params.items, params.chunkSize)) {
+            aggregator.submit( () -> ChunkSchedulingBenchmark.work(part));
+        }
+
+        boolean first = true;
+        while (aggregator.hasNext()) {
+            List<Double> res = aggregator.next();
+            if (first) {
+                counters.firstResult(start);
+                first = false;
+            }
+            blackHole.consume(res);
+        }
+        return aggregator.partialSum();
+    }
+
+    @Benchmark
+    public double trivialInOrder(ExecutionPlan params) {
+
+        List<Callable<Double>> tasks = trivialTasks(params.trivialTasks);
+        List<Future<Double>> futures = new ArrayList<>(tasks.size());
+        for (Callable<Double> task : tasks) futures.add(params.pool.submit(task));
+
+        double val = 0;
+        for (Future<Double> f : futures) val += get(f);
+        return val;
+    }
+
+    @Benchmark
+    public double trivialCompletion(ExecutionPlan params) {
+
+        return new CompletionAggregator<Double>(params.pool, Double::doubleValue)
+                .submitAll(trivialTasks(params.trivialTasks))
+                .awaitSum();
+    }
+
+    static List<Callable<Double>> trivialTasks(int count) {
+
+        List<Callable<Double>> tasks = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            final double v = i;
+            tasks.add( () -> v);
+        }
+        return tasks;
+    }
+
+    static double sum(List<Double> values) {
+        double val = 0;
+        for (double v : values) val += v;
+        return val;
+    }
+
+    static <T> T get(Future<T> f) {
+        try {
+            return f.get();
+        } catch (InterruptedException| ExecutionException e) {
+            throw new RuntimeException("Interrupted analysis in parallel "+e.getMessage(),e);
+        }
+    }
+}
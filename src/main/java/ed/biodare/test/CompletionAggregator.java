@@ -0,0 +1,108 @@
+
+
+package ed.biodare.test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.DoubleAdder;
+import java.util.function.ToDoubleFunction;
+
+/**
+ * Collects chunk results in the order they finish instead of the order they were
+ * submitted, so a slow early chunk does not hold back the ones already done.
+ *
+ * Every worker adds its chunk's value to a striped accumulator as it completes,
+ * so the partial sum and completed count can be read at any time without waiting,
+ * while next() hands out the finished results one by one.
+ */
+public class CompletionAggregator<T> {
+
+    final ExecutorCompletionService<T> completion;
+    final ToDoubleFunction<T> measure;
+    final DoubleAdder partialSum = new DoubleAdder();
+    final AtomicInteger completed = new AtomicInteger();
+    final List<Future<T>> futures = new ArrayList<>();
+
+    int submitted;
+    int taken;
+
+    public CompletionAggregator(ExecutorService pool, ToDoubleFunction<T> measure) {
+        this.completion = new ExecutorCompletionService<>(pool);
+        this.measure = measure;
+    }
+
+    public CompletionAggregator<T> submit(Callable<T> task) {
+
+        futures.add(completion.submit( () -> {
+            T res = task.call();
+            partialSum.add(measure.applyAsDouble(res));
+            completed.incrementAndGet();
+            return res;
+        }));
+        submitted++;
+        return this;
+    }
+
+    public CompletionAggregator<T> submitAll(List<? extends Callable<T>> tasks) {
+        tasks.forEach(this::submit);
+        return this;
+    }
+
+    public boolean hasNext() {
+        return taken < submitted;
+    }
+
+    /**
+     * Next finished result, waits if none is ready yet.
+     */
+    public T next() {
+
+        if (!hasNext()) throw new IllegalStateException("All "+submitted+" results already taken");
+        try {
+            Future<T> done = completion.take();
+            taken++;
+            return done.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            cancelRemaining();
+            throw new RuntimeException("Interrupted analysis in parallel "+e.getMessage(), e);
+        } catch (ExecutionException e) {
+            cancelRemaining();
+            throw new RuntimeException("Failed analysis in parallel "+e.getCause().getMessage(), e.getCause());
+        }
+    }
+
+    /**
+     * Waits for all results and returns the total.
+     */
+    public double awaitSum() {
+        while (hasNext()) next();
+        return partialSum.sum();
+    }
+
+    /**
+     * Sum of the results finished so far, never blocks.
+     */
+    public double partialSum() {
+        return partialSum.sum();
+    }
+
+    public int completed() {
+        return completed.get();
+    }
+
+    public int submitted() {
+        return submitted;
+    }
+
+    void cancelRemaining() {
+        futures.forEach( f -> f.cancel(true));
+        taken = submitted;
+    }
+}
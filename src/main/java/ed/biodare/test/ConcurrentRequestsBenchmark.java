@@ -0,0 +1,180 @@
+
+
+package ed.biodare.test;
+
+import ed.biodare.period.PPAMultiAnalyser;
+import ed.biodare.period.fft_nlls.FFTMultiAnalyser2;
+import ed.biodare.period.mesa.MESAMultiAnalyser;
+import ed.biodare.rhythm.ejtk.BD2JTK;
+import ed.biodare.rhythm.ejtk.patterns.JTKPattern;
+import ed.robust.dom.data.TimeSeries;
+import ed.robust.error.RobustFormatException;
+import java.io.IOException;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntFunction;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.infra.IterationParams;
+import org.openjdk.jmh.runner.IterationType;
+
+/**
+ * Several analyses running at the same time, as in production.
+ *
+ * Every JMH thread is a tenant sending requests back to back (change their number
+ * with -t). Each request is a whole analysis, either with its own analyser and
+ * pool (separate, the platform mode of MultiTenantBenchmark) or on one pool shared
+ * by all tenants (shared). Throughput and p50/p99 request latency come from JMH,
+ * fairness (Jain's index over the tenants' request rates, 1 is perfectly fair)
+ * and the per tenant mean latencies are summed over all the measurement
+ * iterations (warmup excluded) and printed at the end of each trial.
+ */
+@Fork(1)
+@Threads(8)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class ConcurrentRequestsBenchmark {
+
+
+
+    @State(Scope.Benchmark)
+    public static class ExecutionPlan {
+
+        @Param({ "fft", "mesa", "ejtk" })
+        public String method;
+
+        @Param({ "separate", "shared" })
+        public String pools;
+
+        /** threads of a separate per request analyser */
+        @Param({ "4" })
+        public int threads;
+
+        /** size of the shared pool, 0 for all cores */
+        @Param({ "0" })
+        public int sharedThreads;
+
+        public int seriesPerRequest = 64;
+        public int chunkSize = 10;
+        public double periodMin = 18;
+        public double periodMax = 36;
+        int length = 50;
+
+        List<TimeSeries> series;
+        double[][] jtkData;
+        double[] zts;
+        List<JTKPattern> patterns;
+
+        IntFunction<PPAMultiAnalyser> ppaFactory;
+        SharedPPAAnalyser sharedPPA;
+        SharedJTKAnalyser sharedJTK;
+
+        final Queue<TenantStats> tenants = new ConcurrentLinkedQueue<>();
+
+        @Setup(Level.Trial)
+        public void setUp() throws RobustFormatException, IOException {
+            series = MultiTenantBenchmark.requestSeries(seriesPerRequest);
+            jtkData = EJTKBenchmark.makeData(seriesPerRequest, length);
+            zts = EJTKBenchmark.makeTimes(0, length, 1);
+            patterns = ReferenceTables.eJTKClassic();
+
+            switch (method) {
+                case "fft": ppaFactory = FFTMultiAnalyser2::new; break;
+                case "mesa": ppaFactory = MESAMultiAnalyser::new; break;
+                case "ejtk": ppaFactory = null; break;
+                default: throw new IllegalArgumentException("Unknown method: "+method);
+            }
+
+            int size = sharedThreads > 0 ? sharedThreads : Runtime.getRuntime().availableProcessors();
+            ExecutorService shared = AnalysisExecutors.shared(AnalysisExecutors.Kind.FIXED, size);
+            if (ppaFactory != null) sharedPPA = new SharedPPAAnalyser(shared, () -> ppaFactory.apply(1));
+            sharedJTK = new SharedJTKAnalyser(shared, () -> new BD2JTK(1));
+            tenants.clear();
+        }
+
+        @TearDown(Level.Trial)
+        public void report() {
+
+            double sum = 0;
+            double sumSq = 0;
+            StringBuilder means = new StringBuilder();
+            for (TenantStats tenant : tenants) {
+                double rate = tenant.requests / Math.max(1e-9, tenant.activeNanos / 1e9);
+                sum += rate;
+                sumSq += rate*rate;
+                means.append(String.format(" %.2f", tenant.meanLatencyMs()));
+            }
+            double jain = tenants.isEmpty() ? 1 : (sum*sum) / (tenants.size()*sumSq);
+            System.out.printf("%n%s/%s over the measurement iterations, tenants: %d fairness (Jain): %.4f mean latency per tenant ms:%s%n",
+                    method, pools, tenants.size(), jain, means);
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class TenantStats {
+
+        long requests;
+        long activeNanos;
+        boolean registered;
+        boolean measuring;
+
+        @Setup(Level.Iteration)
+        public void iteration(IterationParams iteration) {
+            measuring = iteration.getType() == IterationType.MEASUREMENT;
+        }
+
+        double meanLatencyMs() {
+            return requests == 0 ? 0 : activeNanos / 1e6 / requests;
+        }
+    }
+
+    @Benchmark
+    public Object request(ExecutionPlan params, TenantStats tenant, Blackhole blackHole) {
+
+        if (!tenant.registered) {
+            params.tenants.add(tenant);
+            tenant.registered = true;
+        }
+
+        long sT = System.nanoTime();
+        Object results = analyse(params);
+        if (tenant.measuring) {
+            tenant.activeNanos += System.nanoTime() - sT;
+            tenant.requests++;
+        }
+
+        blackHole.consume(results);
+        return results;
+    }
+
+    Object analyse(ExecutionPlan params) {
+
+        boolean shared = "shared".equals(params.pools);
+        if (params.ppaFactory == null) {
+            return shared
+                    ? params.sharedJTK.analyseData(params.jtkData, params.zts, params.patterns, params.chunkSize)
+                    : new BD2JTK(params.threads).analyseData(params.jtkData, params.zts, params.patterns);
+        }
+        return shared
+                ? params.sharedPPA.analyse(params.series, params.periodMin, params.periodMax, params.chunkSize)
+                : MultiTenantBenchmark.platformRequest(params.ppaFactory, params.series, params.periodMin, params.periodMax, params.chunkSize, params.threads);
+    }
+}
@@ -0,0 +1,127 @@
+
+
+package ed.biodare.test;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Bounded LRU cache of cosine transformed vectors, so the convolution kernels
+ * call Math.cos once per series / pattern instead of once per data x pattern pair.
+ *
+ * Entries are keyed by identity of the input array, inputs are expected not to
+ * change while cached. The bound is the total size of the cached vectors.
+ * Transforms are computed outside of the lock, so racing threads may compute
+ * the same vector twice, but lookups never wait for a transform.
+ */
+public class CosineCache {
+
+    final long maxBytes;
+    final LinkedHashMap<Key, double[]> cache = new LinkedHashMap<>(256, 0.75f, true);
+
+    long bytes;
+    long hits;
+    long misses;
+    long evictions;
+
+    public CosineCache(long maxBytes) {
+        if (maxBytes < 0) throw new IllegalArgumentException("Cache size cannot be negative: "+maxBytes);
+        this.maxBytes = maxBytes;
+    }
+
+    public double[] cosines(double[] values) {
+
+        Key key = new Key(values);
+        synchronized (this) {
+            double[] cached = cache.get(key);
+            if (cached != null) {
+                hits++;
+                return cached;
+            }
+            misses++;
+        }
+
+        double[] transformed = transform(values);
+        long size = sizeOf(transformed);
+        if (size > maxBytes) return transformed;
+
+        synchronized (this) {
+            double[] prev = cache.put(key, transformed);
+            if (prev != null) bytes -= sizeOf(prev);
+            bytes += size;
+            evict();
+        }
+        return transformed;
+    }
+
+    public static double[] transform(double[] values) {
+
+        double[] cos = new double[values.length];
+        for (int i = 0; i < values.length; i++) {
+            cos[i] = Math.cos(values[i]);
+        }
+        return cos;
+    }
+
+    public synchronized long bytes() {
+        return bytes;
+    }
+
+    public synchronized long hits() {
+        return hits;
+    }
+
+    public synchronized long misses() {
+        return misses;
+    }
+
+    public synchronized long evictions() {
+        return evictions;
+    }
+
+    /**
+     * Empties the cache and resets its counters.
+     */
+    public synchronized void clear() {
+        cache.clear();
+        bytes = 0;
+        hits = 0;
+        misses = 0;
+        evictions = 0;
+    }
+
+    void evict() {
+
+        Iterator<Map.Entry<Key, double[]>> it = cache.entrySet().iterator();
+        while (bytes > maxBytes && it.hasNext()) {
+            bytes -= sizeOf(it.next().getValue());
+            it.remove();
+            evictions++;
+        }
+    }
+
+    static long sizeOf(double[] vector) {
+        // array header + payload
+        return 16L + 8L*vector.length;
+    }
+
+    static final class Key {
+
+        final double[] values;
+
+        Key(double[] values) {
+            this.values = values;
+        }
+
+        @Override
+        public int hashCode() {
+            return System.identityHashCode(values);
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            return obj instanceof Key && ((Key) obj).values == values;
+        }
+    }
+}
@@ -0,0 +1,201 @@
+
+
+package ed.biodare.test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import org.apache.commons.math3.util.Pair;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Convolutions computing Math.cos in the inner loop against the cosine cache.
+ *
+ * With warm=true the cache survives between invocations (repeated analysis of the
+ * same data), with warm=false it is cleared before every invocation so the cost
+ * of the transform stage is included. cacheMB below the data size shows the
+ * effect of eviction. Memory cost of the cache is reported as the cacheBytes
+ * aux counter, hits and misses summed over the invocations as cacheHits / cacheMisses.
+ */
+@Fork(1)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class CosineCacheBenchmark {
+
+
+
+    @State(Scope.Benchmark)
+    public static class ExecutionPlan {
+
+        @Param({ "1", "4", "8" })
+        public int threads;
+
+        @Param({ "1", "64" })
+        public int cacheMB;
+
+        @Param({ "true", "false" })
+        public boolean warm;
+
+        int tablesChunk = 25;
+        int tablesDataSize = 64*4*tablesChunk;
+        int tablesPatternSize = 80;
+
+        int memChunk = 50;
+        int memDataSize = 64*5*memChunk;
+        int memPatternSize = 50;
+
+        int length = 50;
+
+        Map<Pair<Integer, Integer>, double[]> tablesPatterns;
+        PatternMatrix patternMatrix;
+        double[][] tablesData;
+
+        List<double[]> memPatterns;
+        List<double[]> memData;
+
+        final MemVsComputationBenchmark memVs = new MemVsComputationBenchmark();
+
+        CosineCache cache;
+        ExecutorService pool;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            tablesPatterns = SmallTablesBenchmark.makePatterns(tablesPatternSize, length);
+            patternMatrix = PatternMatrix.of(tablesPatterns);
+            tablesData = SmallTablesBenchmark.makeData(tablesDataSize, length);
+
+            memPatterns = MemVsComputationBenchmark.makeDatas(memPatternSize, length);
+            memData = MemVsComputationBenchmark.makeDatas(memDataSize, length);
+
+            cache = new CosineCache(cacheMB*1024L*1024L);
+            pool = AnalysisExecutors.newPool(AnalysisExecutors.Kind.FIXED, threads);
+        }
+
+        @Setup(Level.Invocation)
+        public void resetCache() {
+            if (!warm) cache.clear();
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() {
+            pool.shutdown();
+        }
+    }
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class CacheCounters {
+
+        public long cacheBytes;
+        public long cacheHits;
+        public long cacheMisses;
+
+        long startHits;
+        long startMisses;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            cacheHits = 0;
+            cacheMisses = 0;
+        }
+
+        void start(CosineCache cache) {
+            startHits = cache.hits();
+            startMisses = cache.misses();
+        }
+
+        /**
+         * Adds the hits and misses of the invocation since start.
+         */
+        void update(CosineCache cache) {
+            cacheBytes = cache.bytes();
+            cacheHits += cache.hits() - startHits;
+            cacheMisses += cache.misses() - startMisses;
+        }
+    }
+
+    @Benchmark
+    public double tablesDirect(ExecutionPlan params, Blackhole blackHole) {
+
+        BestMatches matches = new BestMatches(params.tablesData.length);
+        runTables(params, (start, end) -> PatternMatcher.bestMatches(params.tablesData, start, end, params.patternMatrix, matches));
+        blackHole.consume(matches);
+        return matches.sum();
+    }
+
+    @Benchmark
+    public double tablesCached(ExecutionPlan params, CacheCounters counters, Blackhole blackHole) {
+
+        counters.start(params.cache);
+        BestMatches matches = new BestMatches(params.tablesData.length);
+        runTables(params, (start, end) -> PatternMatcher.bestMatchesCosines(params.tablesData, start, end, params.patternMatrix, params.cache, matches));
+        counters.update(params.cache);
+        blackHole.consume(matches);
+        return matches.sum();
+    }
+
+    @Benchmark
+    public double memVsDirect(ExecutionPlan params, Blackhole blackHole) {
+
+        List<Callable<Double>> tasks = new ArrayList<>();
+        for (List<double[]> part : Chunks.split(params.memData, params.memChunk)) {
+            tasks.add( () -> params.memVs.convolute(part, params.memPatterns, false));
+        }
+
+        Pair<Long, Double> res = params.memVs.clockTasks(tasks, params.pool);
+        blackHole.consume(res);
+        return res.getSecond();
+    }
+
+    @Benchmark
+    public double memVsCached(ExecutionPlan params, CacheCounters counters, Blackhole blackHole) {
+
+        counters.start(params.cache);
+        List<Callable<Double>> tasks = new ArrayList<>();
+        for (List<double[]> part : Chunks.split(params.memData, params.memChunk)) {
+            tasks.add( () -> params.memVs.convoluteCached(part, params.memPatterns, params.cache));
+        }
+
+        Pair<Long, Double> res = params.memVs.clockTasks(tasks, params.pool);
+        counters.update(params.cache);
+        blackHole.consume(res);
+        return res.getSecond();
+    }
+
+    interface RangeJob {
+        void run(int start, int end);
+    }
+
+    void runTables(ExecutionPlan params, RangeJob job) {
+
+        List<Callable<List<Void>>> tasks = new ArrayList<>();
+        for (int ix = 0; ix < params.tablesData.length; ix+=params.tablesChunk) {
+            final int start = ix;
+            final int end = Math.min(ix+params.tablesChunk, params.tablesData.length);
+            tasks.add( () -> {
+                job.run(start, end);
+                return List.of();
+            });
+        }
+        Chunks.runInOrder(params.pool, tasks);
+    }
+}
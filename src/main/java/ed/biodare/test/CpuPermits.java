@@ -0,0 +1,26 @@
+
+
+package ed.biodare.test;
+
+import java.util.concurrent.Semaphore;
+
+/**
+ * Process wide limit on CPU bound work. Any number of (virtual) threads can be
+ * waiting for analysis, but only as many as there are permits compute at once,
+ * and the fair semaphore hands them out in arrival order across all requests.
+ *
+ * Defaults to the number of cores, -Dbiodare.cpu.permits overrides it.
+ */
+public final class CpuPermits {
+
+    public static final String PERMITS_PROPERTY = "biodare.cpu.permits";
+
+    static final Semaphore GLOBAL = new Semaphore(
+            Integer.getInteger(PERMITS_PROPERTY, Runtime.getRuntime().availableProcessors()), true);
+
+    private CpuPermits() {}
+
+    public static Semaphore global() {
+        return GLOBAL;
+    }
+}
@@ -0,0 +1,102 @@
+
+
+package ed.biodare.test;
+
+import ed.robust.dom.data.TimeSeries;
+import ed.robust.error.RobustFormatException;
+import ed.robust.util.timeseries.TimeSeriesFileHandler;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Single threaded TimeSeriesFileHandler.readFromText against the parallel
+ * memory mapped parser, on p24_48-120.csv with its columns replicated up to
+ * dataSize series (192000 series is about 120MB of csv).
+ *
+ * readText does not use the threads and is repeated for each of them.
+ */
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class CsvParserBenchmark {
+
+
+
+    @State(Scope.Benchmark)
+    public static class ExecutionPlan {
+
+        @Param({ "1920", "19200", "192000" })
+        public int dataSize;
+
+        @Param({ "1", "4", "8" })
+        public int threads;
+
+        public int headerRows = 10;
+
+        Path csv;
+        ExecutorService pool;
+        ParallelCsvParser parser;
+
+        @Setup(Level.Trial)
+        public void setUp() throws IOException {
+            csv = Files.createTempFile("series", ".csv");
+            SeriesStoreBenchmark.replicateColumns("p24_48-120.csv", dataSize, csv);
+
+            pool = AnalysisExecutors.newPool(AnalysisExecutors.Kind.FIXED, threads);
+            parser = new ParallelCsvParser(pool, threads);
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() throws IOException {
+            pool.shutdown();
+            Files.deleteIfExists(csv);
+        }
+    }
+
+    @Benchmark
+    public List<TimeSeries> readText(ExecutionPlan params, Blackhole blackHole) throws RobustFormatException, IOException {
+
+        try (InputStream in = Files.newInputStream(params.csv)) {
+            List<TimeSeries> series = TimeSeriesFileHandler.readFromText(in, ",", params.headerRows);
+            blackHole.consume(series);
+            return series;
+        }
+    }
+
+    @Benchmark
+    public List<TimeSeries> parallelTimeSeries(ExecutionPlan params, Blackhole blackHole) throws IOException {
+
+        List<TimeSeries> series = params.parser.parseTimeSeries(params.csv, ',', params.headerRows);
+        blackHole.consume(series);
+        return series;
+    }
+
+    @Benchmark
+    public ParallelCsvParser.Columns parallelColumns(ExecutionPlan params, Blackhole blackHole) throws IOException {
+
+        ParallelCsvParser.Columns columns = params.parser.parseColumns(params.csv, ',', params.headerRows);
+        blackHole.consume(columns);
+        return columns;
+    }
+}
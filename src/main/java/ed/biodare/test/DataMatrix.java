@@ -0,0 +1,123 @@
+
+
+package ed.biodare.test;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+
+/**
+ * Rows x columns of doubles in one contiguous block, either a single heap array
+ * or an off-heap direct buffer, instead of one array per row.
+ *
+ * The matrix is filled once and then only read, each thread gets its own read
+ * only view so no locking and no copies of the whole data are needed.
+ */
+public final class DataMatrix {
+
+    final int rows;
+    final int cols;
+    final DoubleBuffer data;
+
+    DataMatrix(int rows, int cols, DoubleBuffer data) {
+        this.rows = rows;
+        this.cols = cols;
+        this.data = data;
+    }
+
+    public static DataMatrix onHeap(double[][] rows) {
+        int cols = columns(rows);
+        return fill(new DataMatrix(rows.length, cols, DoubleBuffer.wrap(new double[rows.length*cols])), rows);
+    }
+
+    public static DataMatrix offHeap(double[][] rows) {
+        int cols = columns(rows);
+        ByteBuffer block = ByteBuffer.allocateDirect(rows.length*cols*Double.BYTES).order(ByteOrder.nativeOrder());
+        return fill(new DataMatrix(rows.length, cols, block.asDoubleBuffer()), rows);
+    }
+
+    static int columns(double[][] rows) {
+
+        int cols = rows.length > 0 ? rows[0].length : 0;
+        if ((long) rows.length*cols*Double.BYTES > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Matrix too large: "+rows.length+"x"+cols);
+        }
+        return cols;
+    }
+
+    static DataMatrix fill(DataMatrix matrix, double[][] rows) {
+
+        for (int r = 0; r < rows.length; r++) {
+            if (rows[r].length != matrix.cols) {
+                throw new IllegalArgumentException("Row "+r+" length "+rows[r].length+"!="+matrix.cols);
+            }
+            matrix.data.put(rows[r], 0, matrix.cols);
+        }
+        matrix.data.clear();
+        return matrix;
+    }
+
+    public int rows() {
+        return rows;
+    }
+
+    public int cols() {
+        return cols;
+    }
+
+    public boolean isOffHeap() {
+        return data.isDirect();
+    }
+
+    public View view() {
+        return new View(data.asReadOnlyBuffer());
+    }
+
+    /**
+     * Read only view for a single thread.
+     */
+    public final class View {
+
+        final DoubleBuffer buffer;
+
+        View(DoubleBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        public double get(int row, int col) {
+            return buffer.get(row*cols+col);
+        }
+
+        public double[] copyRow(int row, double[] dst) {
+            // relative bulk get, the view and its position belong to one thread
+            buffer.position(row*cols);
+            buffer.get(dst, 0, cols);
+            return dst;
+        }
+
+        /**
+         * Rows [start, end) as new arrays, as needed by the analysers taking double[][].
+         */
+        public double[][] copyRows(int start, int end) {
+
+            double[][] part = new double[end-start][];
+            for (int r = start; r < end; r++) {
+                part[r-start] = copyRow(r, new double[cols]);
+            }
+            return part;
+        }
+
+        /**
+         * Rows [start, end) copied into the given rows, which must hold end-start
+         * arrays of at least cols each.
+         */
+        public double[][] copyRows(int start, int end, double[][] dst) {
+
+            if (dst.length != end-start) throw new IllegalArgumentException("Expected "+(end-start)+" rows not: "+dst.length);
+            for (int r = start; r < end; r++) {
+                copyRow(r, dst[r-start]);
+            }
+            return dst;
+        }
+    }
+}
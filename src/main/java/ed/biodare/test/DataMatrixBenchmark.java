@@ -0,0 +1,151 @@
+
+
+package ed.biodare.test;
+
+import ed.biodare.rhythm.ejtk.BD2JTK;
+import ed.biodare.rhythm.ejtk.BD2eJTKRes;
+import ed.biodare.rhythm.ejtk.ListBD2JTK;
+import ed.biodare.rhythm.ejtk.patterns.JTKPattern;
+import java.util.Collection;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * JTK input as separate row arrays (with ListBD2JTK copy flags on and off)
+ * against the flat on-heap and off-heap DataMatrix, whose chunks are copied into
+ * per worker scratch rows. Run with -prof gc to compare the allocation and GC
+ * churn, or run main for the bytes per operation of the shared pool paths:
+ *
+ * java -cp target/benchmarks.jar ed.biodare.test.DataMatrixBenchmark [threads]
+ */
+@Fork(value = 1, jvmArgsAppend = {"-Xmx8g", "-XX:MaxDirectMemorySize=4g"})
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class DataMatrixBenchmark {
+
+
+
+    @State(Scope.Benchmark)
+    public static class ExecutionPlan {
+
+        @Param({ "1", "4", "8" })
+        public int threads;
+
+        @Param({ "16000", "160000" })
+        public int dataSize;
+
+        public int chunkSize = 100;
+        int length = 50;
+
+        List<JTKPattern> patterns;
+        double[][] data;
+        double[] zts;
+
+        DataMatrix onHeap;
+        DataMatrix offHeap;
+        SharedJTKAnalyser sharedJTK;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            patterns = ReferenceTables.eJTKClassic();
+            data = EJTKBenchmark.makeData(dataSize, length);
+            zts = EJTKBenchmark.makeTimes(0, length, 1);
+
+            onHeap = DataMatrix.onHeap(data);
+            offHeap = DataMatrix.offHeap(data);
+            sharedJTK = new SharedJTKAnalyser(AnalysisExecutors.shared(AnalysisExecutors.Kind.FIXED, threads), () -> new BD2JTK(1));
+        }
+    }
+
+    @Benchmark
+    public List<BD2eJTKRes> rowsListJTKNoCpy(ExecutionPlan params, Blackhole blackHole) {
+
+        ListBD2JTK analyser = new ListBD2JTK(params.threads);
+        analyser.cpySeries = false;
+        analyser.cpyZts = false;
+        analyser.cpyReferences = false;
+        analyser.cpyRefData = false;
+        analyser.cpyRefPatterns = false;
+
+        List<BD2eJTKRes> results = analyser.analyseData(params.data, params.zts, params.patterns);
+        blackHole.consume(results);
+        return results;
+    }
+
+    @Benchmark
+    public List<BD2eJTKRes> rowsListJTKFullCpy(ExecutionPlan params, Blackhole blackHole) {
+
+        ListBD2JTK analyser = new ListBD2JTK(params.threads);
+
+        List<BD2eJTKRes> results = analyser.analyseData(params.data, params.zts, params.patterns);
+        blackHole.consume(results);
+        return results;
+    }
+
+    @Benchmark
+    public List<BD2eJTKRes> rowsShared(ExecutionPlan params, Blackhole blackHole) {
+
+        List<BD2eJTKRes> results = params.sharedJTK.analyseData(params.data, params.zts, params.patterns, params.chunkSize);
+        blackHole.consume(results);
+        return results;
+    }
+
+    @Benchmark
+    public List<BD2eJTKRes> matrixOnHeap(ExecutionPlan params, Blackhole blackHole) {
+
+        List<BD2eJTKRes> results = params.sharedJTK.analyseData(params.onHeap, params.zts, params.patterns, params.chunkSize);
+        blackHole.consume(results);
+        return results;
+    }
+
+    @Benchmark
+    public List<BD2eJTKRes> matrixOffHeap(ExecutionPlan params, Blackhole blackHole) {
+
+        List<BD2eJTKRes> results = params.sharedJTK.analyseData(params.offHeap, params.zts, params.patterns, params.chunkSize);
+        blackHole.consume(results);
+        return results;
+    }
+
+    public static void main(String[] args) throws RunnerException {
+
+        Options opts = new OptionsBuilder()
+                .include(DataMatrixBenchmark.class.getName()+".(rowsShared|matrixOnHeap|matrixOffHeap)$")
+                .addProfiler(GCProfiler.class)
+                .param("threads", args.length > 0 ? args[0] : "4")
+                .build();
+
+        Collection<RunResult> results = new Runner(opts).run();
+        System.out.println("benchmark,dataSize,threads,msPerOp,bytesPerOp,gcCount");
+        for (RunResult result : results) {
+            String benchmark = result.getParams().getBenchmark();
+            System.out.println(String.format(Locale.ROOT, "%s,%s,%s,%.3f,%.0f,%.0f",
+                    benchmark.substring(benchmark.lastIndexOf('.')+1),
+                    result.getParams().getParam("dataSize"), result.getParams().getParam("threads"),
+                    result.getPrimaryResult().getScore(),
+                    AllocationScalingRunner.score(AllocationScalingRunner.secondary(result, "gc.alloc.rate.norm"), Double.NaN),
+                    AllocationScalingRunner.score(AllocationScalingRunner.secondary(result, "gc.count"), 0)));
+        }
+    }
+}
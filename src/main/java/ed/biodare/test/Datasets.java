@@ -0,0 +1,176 @@
+
+
+package ed.biodare.test;
+
+import ed.robust.dom.data.TimeSeries;
+import ed.robust.dom.util.Pair;
+import ed.robust.util.timeseries.TSGenerator;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Reproducible benchmark data: every generator is seeded, so the same call gives
+ * the same data in every invocation, fork and run, and results of different
+ * commits can be compared.
+ *
+ * The cached variants keep the generated data in a columnar store under the temp
+ * dir (or -Dbiodare.datasets.dir), which is memory mapped back by later trials
+ * and forks instead of generating again. Change VERSION when a generator changes.
+ */
+public final class Datasets {
+
+    public enum Shape {
+        /** noisy cosines of periods 20-27 and random phases */
+        COSINE,
+        /** noisy lines of small random slopes */
+        LINEAR,
+        /** cosines under noise of a quarter of their amplitude */
+        NOISY,
+        /** cosines with exponentially decaying amplitude */
+        DAMPED,
+        /** half cosines half lines, as the original FFT benchmark data */
+        MIXED
+    }
+
+    public static final long SEED = 0x5eed_b10da7eL;
+    static final int VERSION = 1;
+
+    private Datasets() {}
+
+    /**
+     * Seed of a dataset, derived from its kind and size so that e.g. patterns and
+     * data of the same length are not the same numbers.
+     */
+    public static long seed(String kind, int count, int length) {
+        long h = SEED;
+        h = 31*h + kind.hashCode();
+        h = 31*h + count;
+        h = 31*h + length;
+        return SeriesFingerprint.mix(h);
+    }
+
+    public static List<TimeSeries> series(Shape shape, int count, int length, long seed) {
+
+        Random rnd = new Random(seed);
+        List<TimeSeries> datas = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            datas.add(series(shape, length, rnd));
+        }
+        return datas;
+    }
+
+    static TimeSeries series(Shape shape, int length, Random rnd) {
+
+        double amp = 10;
+        switch (shape) {
+            case COSINE:
+                return noise(TSGenerator.makeCos(length, 1, 20+rnd.nextInt(8), rnd.nextDouble()*24, amp), 0.25, rnd);
+            case LINEAR:
+                return noise(TSGenerator.makeLine(length, 1, rnd.nextDouble()*0.01, 1), 0.25, rnd);
+            case NOISY:
+                return noise(TSGenerator.makeCos(length, 1, 20+rnd.nextInt(8), rnd.nextDouble()*24, amp), amp/4, rnd);
+            case DAMPED: {
+                TimeSeries cos = TSGenerator.makeCos(length, 1, 20+rnd.nextInt(8), rnd.nextDouble()*24, amp);
+                Pair<double[], double[]> tv = cos.getTimesAndValues();
+                double[] times = tv.getLeft();
+                double[] values = tv.getRight().clone();
+                // amplitude halves over the first third of the series
+                double decay = Math.log(2) / Math.max(1, times[times.length-1] / 3);
+                for (int i = 0; i < values.length; i++) values[i] *= Math.exp(-decay*times[i]);
+                return noise(new TimeSeries(times, values), 0.25, rnd);
+            }
+            case MIXED:
+                return rnd.nextBoolean()
+                        ? noise(TSGenerator.makeCos(length, 1, 20+rnd.nextInt(8), 5, amp), 0.25, rnd)
+                        : noise(TSGenerator.makeLine(length, 1, 0.001, 1), 0.25, rnd);
+            default: throw new IllegalArgumentException("Unknown shape: "+shape);
+        }
+    }
+
+    /**
+     * Adds gaussian noise of the given standard deviation, TSGenerator.addNoise
+     * draws from its own unseeded random.
+     */
+    static TimeSeries noise(TimeSeries series, double level, Random rnd) {
+
+        Pair<double[], double[]> tv = series.getTimesAndValues();
+        double[] values = tv.getRight().clone();
+        for (int i = 0; i < values.length; i++) values[i] += rnd.nextGaussian()*level;
+        return new TimeSeries(tv.getLeft(), values);
+    }
+
+    /**
+     * Rows of uniform values in [min, max).
+     */
+    public static double[][] uniform(int count, int length, double min, double max, long seed) {
+
+        Random rnd = new Random(seed);
+        double[][] data = new double[count][];
+        for (int i = 0; i < count; i++) {
+            double[] row = new double[length];
+            for (int k = 0; k < length; k++) row[k] = min+rnd.nextDouble()*(max-min);
+            data[i] = row;
+        }
+        return data;
+    }
+
+    public static List<TimeSeries> cachedSeries(Shape shape, int count, int length, long seed) {
+
+        Path file = cacheFile(shape.name().toLowerCase(), count, length, seed);
+        try {
+            if (!Files.exists(file)) {
+                Path tmp = Files.createTempFile(file.getParent(), "dataset", ".tmp");
+                ColumnarSeriesStore.write(series(shape, count, length, seed), tmp);
+                publish(tmp, file);
+            }
+            try (ColumnarSeriesStore store = ColumnarSeriesStore.open(file)) {
+                return new ArrayList<>(store.asTimeSeries());
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot cache dataset: "+file, e);
+        }
+    }
+
+    public static double[][] cachedUniform(int count, int length, double min, double max, long seed) {
+
+        Path file = cacheFile("uniform_"+min+"_"+max, count, length, seed);
+        try {
+            if (!Files.exists(file)) {
+                Path tmp = Files.createTempFile(file.getParent(), "dataset", ".tmp");
+                double[] index = new double[length];
+                for (int i = 0; i < length; i++) index[i] = i;
+                ColumnarSeriesStore.write(uniform(count, length, min, max, seed), index, tmp);
+                publish(tmp, file);
+            }
+            try (ColumnarSeriesStore store = ColumnarSeriesStore.open(file)) {
+                return store.valuesMatrix();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot cache dataset: "+file, e);
+        }
+    }
+
+    static Path cacheFile(String kind, int count, int length, long seed) {
+
+        Path dir = Paths.get(System.getProperty("biodare.datasets.dir",
+                Paths.get(System.getProperty("java.io.tmpdir"), "biodare-bench-datasets").toString()));
+        try {
+            Files.createDirectories(dir);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot create datasets dir: "+dir, e);
+        }
+        return dir.resolve(kind+"-"+count+"x"+length+"-"+Long.toHexString(seed)+"-v"+VERSION+".bdts");
+    }
+
+    static void publish(Path tmp, Path file) throws IOException {
+        // forks may generate the same dataset at once, whichever moves last wins with the same content
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+}
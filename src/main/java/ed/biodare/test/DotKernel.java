@@ -0,0 +1,13 @@
+
+
+package ed.biodare.test;
+
+/**
+ * Multiply-accumulate over two double vectors.
+ */
+public interface DotKernel {
+
+    double dot(double[] a, int aOffset, double[] b, int bOffset, int length);
+
+    String name();
+}
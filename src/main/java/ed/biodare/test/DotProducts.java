@@ -0,0 +1,64 @@
+
+
+package ed.biodare.test;
+
+/**
+ * Multiply-accumulate kernels for the inner loops of the table benchmarks.
+ *
+ * The kernel is chosen once at class load: the SIMD one (built with the vector
+ * profile, needs --add-modules=jdk.incubator.vector at runtime, which the
+ * vector benchmarks jar adds to every fork, see VectorBenchmarks) when it can
+ * be loaded, otherwise the scalar loop. -Dbiodare.dot.kernel=scalar|vector|auto
+ * forces the choice.
+ */
+public final class DotProducts {
+
+    public static final String KERNEL_PROPERTY = "biodare.dot.kernel";
+    static final String VECTOR_KERNEL = "ed.biodare.test.VectorDotKernel";
+
+    static final DotKernel KERNEL = kernel(System.getProperty(KERNEL_PROPERTY, "auto"));
+
+    private DotProducts() {}
+
+    public static double dot(double[] a, double[] b) {
+        if (a.length != b.length) throw new IllegalArgumentException("Length mismatch: "+a.length+"!="+b.length);
+        return dot(a, 0, b, 0, a.length);
+    }
+
+    public static double dot(double[] a, int aOffset, double[] b, int bOffset, int length) {
+        return KERNEL.dot(a, aOffset, b, bOffset, length);
+    }
+
+    public static DotKernel kernel() {
+        return KERNEL;
+    }
+
+    public static DotKernel kernel(String name) {
+
+        switch (name) {
+            case "scalar": return new ScalarDotKernel();
+            case "vector": return vectorKernel();
+            case "auto": return vectorSupported() ? vectorKernel() : new ScalarDotKernel();
+            default: throw new IllegalArgumentException("Unknown dot kernel: "+name);
+        }
+    }
+
+    public static boolean vectorSupported() {
+
+        try {
+            DotKernel kernel = vectorKernel();
+            return kernel.dot(new double[] {1, 2}, 0, new double[] {3, 4}, 0, 2) == 11;
+        } catch (IllegalStateException | LinkageError e) {
+            return false;
+        }
+    }
+
+    static DotKernel vectorKernel() {
+
+        try {
+            return (DotKernel) Class.forName(VECTOR_KERNEL).getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Vector kernel is not available, build with -Pvector and run with --add-modules=jdk.incubator.vector", e);
+        }
+    }
+}
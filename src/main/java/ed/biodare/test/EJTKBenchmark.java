@@ -7,11 +7,9 @@ import ed.biodare.rhythm.ejtk.BD2eJTK;
 import ed.biodare.rhythm.ejtk.BD2eJTKRes;
 //import ed.biodare.rhythm.ejtk.CopyingBD2JTK;
 //import ed.biodare.rhythm.ejtk.IdentityBD2JTK;
-import ed.biodare.rhythm.ejtk.JTKPatterns;
 import ed.biodare.rhythm.ejtk.ListBD2JTK;
 import ed.biodare.rhythm.ejtk.patterns.JTKPattern;
 import java.util.List;
-import java.util.Random;
 import java.util.concurrent.TimeUnit;
 import java.util.stream.IntStream;
 import org.openjdk.jmh.annotations.Benchmark;
@@ -52,10 +50,10 @@ public class EJTKBenchmark {
         double[][] data;
         double[] zts;
 
-        @Setup(Level.Invocation)
+        @Setup(Level.Trial)
         public void setUp() {
-            patterns = JTKPatterns.eJTKClassic();
-            data = makeData(dataSize, length);
+            patterns = ReferenceTables.eJTKClassic();
+            data = Datasets.cachedUniform(dataSize, length, 0.1, 10.1, Datasets.seed("jtk", dataSize, length));
             zts = makeTimes(0, length, 1);
         }
     }
@@ -200,14 +198,6 @@ public class EJTKBenchmark {
     
     static double[][] makeData(int count, int length) {
 
-        Random rnd = new Random();
-        double[][] data = new double[count][];
-        
-        for (int i = 0; i< count; i++) {
-            double[] row = new double[length];
-            for (int k =0;k < length; k++) row[k] = 0.1+rnd.nextDouble()*10;
-            data[i] = row;
-        }
-        return data;
+        return Datasets.uniform(count, length, 0.1, 10.1, Datasets.seed("jtk", count, length));
     }    
 }
@@ -5,10 +5,7 @@ package ed.biodare.test;
 import ed.biodare.period.fft_nlls.FFTMultiAnalyser2;
 import ed.robust.dom.data.TimeSeries;
 import ed.robust.dom.tsprocessing.PPAResult;
-import ed.robust.util.timeseries.TSGenerator;
-import java.util.ArrayList;
 import java.util.List;
-import java.util.Random;
 import java.util.concurrent.TimeUnit;
 import org.openjdk.jmh.annotations.Benchmark;
 import org.openjdk.jmh.annotations.BenchmarkMode;
@@ -48,9 +45,9 @@ public class FFTBenchmark {
         
         List<TimeSeries> data;
 
-        @Setup(Level.Invocation)
+        @Setup(Level.Trial)
         public void setUp() {
-            data = makeData(dataSize, length);
+            data = Datasets.cachedSeries(Datasets.Shape.MIXED, dataSize, length, Datasets.seed("fft", dataSize, length));
         }
     }
     
@@ -67,21 +64,6 @@ public class FFTBenchmark {
     
     static List<TimeSeries> makeData(int count, int length) {
 
-        Random rnd = new Random();
-        
-        List<TimeSeries> datas = new ArrayList<>();
-        
-        for (int i=0; i< count; i++) {
-            if (rnd.nextBoolean()) {
-                double period = 20+rnd.nextInt(8);
-                TimeSeries data = TSGenerator.makeCos(length, 1, period, 5,10);
-                datas.add(TSGenerator.addNoise(data, 0.25));
-            } else {
-                TimeSeries data = (TSGenerator.makeLine(length, 1, 0.001, 1));
-                datas.add(TSGenerator.addNoise(data, 0.25));
-            }
-        }
-        
-        return datas;
+        return Datasets.series(Datasets.Shape.MIXED, count, length, Datasets.seed("fft", count, length));
     }    
 }
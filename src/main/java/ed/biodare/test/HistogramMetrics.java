@@ -0,0 +1,73 @@
+
+
+package ed.biodare.test;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Metrics kept in memory as histograms per analysis method: chunk queue wait and
+ * compute time (nanos), allocated bytes per chunk and items per chunk, plus the
+ * span of the recorded chunks for the workers utilization.
+ */
+public class HistogramMetrics implements AnalysisMetrics {
+
+    public static final class MethodStats {
+
+        public final LogHistogram queueNanos = new LogHistogram();
+        public final LogHistogram computeNanos = new LogHistogram();
+        public final LogHistogram allocatedBytes = new LogHistogram();
+        public final LogHistogram items = new LogHistogram();
+
+        final AtomicLong firstStart = new AtomicLong(Long.MAX_VALUE);
+        final AtomicLong lastEnd = new AtomicLong(Long.MIN_VALUE);
+
+        void record(int chunkItems, long queue, long compute, long allocated) {
+
+            queueNanos.record(queue);
+            computeNanos.record(compute);
+            if (allocated >= 0) allocatedBytes.record(allocated);
+            items.record(chunkItems);
+
+            long end = System.nanoTime();
+            long start = end - compute;
+            firstStart.accumulateAndGet(start, Math::min);
+            lastEnd.accumulateAndGet(end, Math::max);
+        }
+
+        /**
+         * Busy fraction of the workers between the first chunk start and the last
+         * chunk end, idle time between the analyses included: clear the metrics
+         * when a measured period starts.
+         */
+        public double utilization(int workers) {
+            long span = lastEnd.get() - firstStart.get();
+            return span <= 0 ? 0 : (double) computeNanos.sum() / ((double) span * workers);
+        }
+
+        @Override
+        public String toString() {
+            return "queue ns: "+queueNanos+"\ncompute ns: "+computeNanos+"\nallocated B: "+allocatedBytes+"\nitems: "+items;
+        }
+    }
+
+    final Map<String, MethodStats> methods = new ConcurrentHashMap<>();
+
+    @Override
+    public void chunk(String method, int items, long queueNanos, long computeNanos, long allocatedBytes) {
+        methods.computeIfAbsent(method, m -> new MethodStats()).record(items, queueNanos, computeNanos, allocatedBytes);
+    }
+
+    public MethodStats stats(String method) {
+        return methods.get(method);
+    }
+
+    public Map<String, MethodStats> all() {
+        return methods;
+    }
+
+    public void clear() {
+        methods.clear();
+    }
+}
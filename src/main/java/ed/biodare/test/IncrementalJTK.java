@@ -0,0 +1,239 @@
+
+
+package ed.biodare.test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Kendall tau-b of every series against every reference, kept up to date as
+ * time points are appended instead of recomputed over the whole series.
+ *
+ * Time points whose reference levels are equal for all the references fall into
+ * the same bucket (for periodic sampling there are at most points-per-period
+ * buckets). Each series keeps its values sorted per bucket, so a new point costs
+ * a binary search per bucket plus one signed sum per reference and bucket:
+ * O(buckets (log n + references)) per series, independent of the series length
+ * apart from the insert into the sorted bucket. Irregular sampling degrades to
+ * one bucket per point, i.e. linear updates.
+ *
+ * Only tau is kept, p values and the eJTK empirical calibration are not.
+ */
+public class IncrementalJTK {
+
+    final List<JTKReference> refs;
+    final int rows;
+
+    int points;
+
+    // buckets of time points with identical reference levels
+    final Map<LevelsKey, Integer> bucketIx = new HashMap<>();
+    final List<long[]> bucketLevels = new ArrayList<>();
+    int[] bucketCount = new int[8];
+
+    // ties between reference values, per reference (same for every series)
+    final long[] refTies;
+
+    // per series
+    final double[][][] sorted;
+    final long[][] concordance;
+    final long[] valueTies;
+
+    public IncrementalJTK(List<JTKReference> refs, int rows) {
+        if (refs.isEmpty()) throw new IllegalArgumentException("No references given");
+        this.refs = List.copyOf(refs);
+        this.rows = rows;
+        this.refTies = new long[refs.size()];
+        this.sorted = new double[rows][8][];
+        this.concordance = new long[rows][refs.size()];
+        this.valueTies = new long[rows];
+    }
+
+    public int rows() {
+        return rows;
+    }
+
+    public int points() {
+        return points;
+    }
+
+    /**
+     * Appends the time point with the values of all series at it.
+     */
+    public void append(double zt, double[] column) {
+
+        if (column.length != rows) throw new IllegalArgumentException("Expected values for "+rows+" series not: "+column.length);
+
+        // once per point for all the series, the zts grid is not known in advance
+        int refsCount = refs.size();
+        long[] levels = new long[refsCount];
+        for (int p = 0; p < refsCount; p++) levels[p] = refs.get(p).level(zt);
+
+        int buckets = bucketLevels.size();
+
+        // sign of the new reference value against each bucket's, and the new reference ties
+        byte[] signs = new byte[buckets*refsCount];
+        for (int b = 0; b < buckets; b++) {
+            long[] bl = bucketLevels.get(b);
+            for (int p = 0; p < refsCount; p++) {
+                int sign = Long.compare(levels[p], bl[p]);
+                signs[b*refsCount+p] = (byte) sign;
+                if (sign == 0) refTies[p] += bucketCount[b];
+            }
+        }
+
+        int bucket = bucket(levels);
+
+        int[] diff = new int[buckets];
+        for (int r = 0; r < rows; r++) {
+            double x = column[r];
+            if (Double.isNaN(x)) throw new IllegalArgumentException("Missing value for series "+r+" at: "+zt);
+
+            double[][] rowBuckets = sorted[r];
+            long ties = 0;
+            for (int b = 0; b < buckets; b++) {
+                int size = bucketCount[b];
+                int less = lowerBound(rowBuckets[b], size, x);
+                int notGreater = upperBound(rowBuckets[b], size, x, less);
+                diff[b] = less - (size - notGreater);
+                ties += notGreater - less;
+            }
+            valueTies[r] += ties;
+
+            long[] s = concordance[r];
+            for (int b = 0; b < buckets; b++) {
+                int d = diff[b];
+                if (d == 0) continue;
+                int off = b*refsCount;
+                for (int p = 0; p < refsCount; p++) s[p] += signs[off+p]*d;
+            }
+
+            insert(r, bucket, x);
+        }
+        bucketCount[bucket]++;
+        points++;
+    }
+
+    public double tau(int row, int ref) {
+
+        long pairs = (long) points*(points-1)/2;
+        double denom = Math.sqrt((double) (pairs - valueTies[row]) * (pairs - refTies[ref]));
+        return denom == 0 ? 0 : concordance[row][ref] / denom;
+    }
+
+    public int bestReference(int row) {
+
+        int best = 0;
+        double bestTau = Double.NEGATIVE_INFINITY;
+        for (int p = 0; p < refs.size(); p++) {
+            double tau = tau(row, p);
+            if (tau > bestTau) {
+                bestTau = tau;
+                best = p;
+            }
+        }
+        return best;
+    }
+
+    public JTKReference reference(int ref) {
+        return refs.get(ref);
+    }
+
+    int bucket(long[] levels) {
+
+        LevelsKey key = new LevelsKey(levels);
+        Integer ix = bucketIx.get(key);
+        if (ix != null) return ix;
+
+        ix = bucketLevels.size();
+        bucketIx.put(key, ix);
+        bucketLevels.add(levels);
+        if (ix == bucketCount.length) {
+            bucketCount = Arrays.copyOf(bucketCount, ix*2);
+            for (int r = 0; r < rows; r++) sorted[r] = Arrays.copyOf(sorted[r], ix*2);
+        }
+        for (int r = 0; r < rows; r++) sorted[r][ix] = new double[4];
+        return ix;
+    }
+
+    void insert(int row, int bucket, double x) {
+
+        double[] values = sorted[row][bucket];
+        int size = bucketCount[bucket];
+        if (size == values.length) {
+            values = Arrays.copyOf(values, size*2);
+            sorted[row][bucket] = values;
+        }
+        int at = upperBound(values, size, x, lowerBound(values, size, x));
+        System.arraycopy(values, at, values, at+1, size-at);
+        values[at] = x;
+    }
+
+    static int lowerBound(double[] values, int size, double x) {
+        int lo = 0, hi = size;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (values[mid] < x) lo = mid+1;
+            else hi = mid;
+        }
+        return lo;
+    }
+
+    static int upperBound(double[] values, int size, double x, int from) {
+        int lo = from, hi = size;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (values[mid] <= x) lo = mid+1;
+            else hi = mid;
+        }
+        return lo;
+    }
+
+    /**
+     * Tau-b computed over all pairs, the full recomputation the updates replace.
+     * The reference levels come from the shared table, see ReferenceTables.
+     */
+    static double fullTau(double[] values, ReferenceTable table, int ref) {
+
+        long s = 0, xTies = 0, yTies = 0;
+        int length = table.length();
+
+        for (int i = 0; i < length; i++) {
+            double level = table.value(ref, i);
+            for (int j = i+1; j < length; j++) {
+                int sx = values[i] < values[j] ? -1 : (values[i] > values[j] ? 1 : 0);
+                int sy = Double.compare(level, table.value(ref, j));
+                if (sx == 0) xTies++;
+                if (sy == 0) yTies++;
+                s += Integer.signum(sx)*Integer.signum(sy);
+            }
+        }
+        long pairs = (long) length*(length-1)/2;
+        double denom = Math.sqrt((double) (pairs - xTies) * (pairs - yTies));
+        return denom == 0 ? 0 : s / denom;
+    }
+
+    static final class LevelsKey {
+
+        final long[] levels;
+        final int hash;
+
+        LevelsKey(long[] levels) {
+            this.levels = levels;
+            this.hash = Arrays.hashCode(levels);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            return obj instanceof LevelsKey && Arrays.equals(levels, ((LevelsKey) obj).levels);
+        }
+    }
+}
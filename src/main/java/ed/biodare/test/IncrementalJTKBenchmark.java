@@ -0,0 +1,112 @@
+
+
+package ed.biodare.test;
+
+import ed.biodare.rhythm.ejtk.BD2eJTK;
+import ed.biodare.rhythm.ejtk.BD2eJTKRes;
+import ed.biodare.rhythm.ejtk.patterns.JTKPattern;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Cost of taking one more hourly time point into the rhythm analysis: appending it
+ * to the incremental tau state, against recomputing tau for all pairs and against
+ * re-running eJTK over the extended data, for growing series length.
+ */
+@Fork(1)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class IncrementalJTKBenchmark {
+
+
+
+    @State(Scope.Benchmark)
+    public static class ExecutionPlan {
+
+        @Param({ "24", "48", "96", "192" })
+        public int length;
+
+        public int dataSize = 256;
+
+        double[][] data;
+        double[] zts;
+        double[] lastColumn;
+        List<JTKReference> references;
+        ReferenceTable table;
+        List<JTKPattern> patterns;
+
+        IncrementalJTK state;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            data = EJTKBenchmark.makeData(dataSize, length);
+            zts = EJTKBenchmark.makeTimes(0, length, 1);
+            references = JTKReference.classic();
+            table = ReferenceTables.classic(zts);
+            patterns = ReferenceTables.eJTKClassic();
+
+            lastColumn = new double[dataSize];
+            for (int r = 0; r < dataSize; r++) lastColumn[r] = data[r][length-1];
+        }
+
+        // state with all but the last point, the append is then measured
+        @Setup(Level.Invocation)
+        public void prepareState() {
+            state = new IncrementalJTK(references, dataSize);
+            double[] column = new double[dataSize];
+            for (int i = 0; i < length-1; i++) {
+                for (int r = 0; r < dataSize; r++) column[r] = data[r][i];
+                state.append(zts[i], column);
+            }
+        }
+    }
+
+    @Benchmark
+    public double incrementalAppend(ExecutionPlan params) {
+
+        IncrementalJTK state = params.state;
+        state.append(params.zts[params.length-1], params.lastColumn);
+
+        double val = 0;
+        for (int r = 0; r < state.rows(); r++) val += state.tau(r, state.bestReference(r));
+        return val;
+    }
+
+    @Benchmark
+    public double fullRecompute(ExecutionPlan params) {
+
+        double val = 0;
+        ReferenceTable table = params.table;
+        for (double[] row : params.data) {
+            double best = Double.NEGATIVE_INFINITY;
+            for (int ref = 0; ref < table.size(); ref++) {
+                best = Math.max(best, IncrementalJTK.fullTau(row, table, ref));
+            }
+            val += best;
+        }
+        return val;
+    }
+
+    @Benchmark
+    public List<BD2eJTKRes> eJTKRerun(ExecutionPlan params, Blackhole blackHole) {
+
+        List<BD2eJTKRes> results = new BD2eJTK(1).analyseData(params.data, params.zts, params.patterns);
+        blackHole.consume(results);
+        return results;
+    }
+}
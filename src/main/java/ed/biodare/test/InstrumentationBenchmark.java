@@ -0,0 +1,137 @@
+
+
+package ed.biodare.test;
+
+import ed.biodare.period.fft_nlls.FFTMultiAnalyser2;
+import ed.biodare.rhythm.ejtk.BD2JTK;
+import ed.biodare.rhythm.ejtk.patterns.JTKPattern;
+import ed.robust.dom.data.TimeSeries;
+import ed.robust.error.RobustFormatException;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import jdk.jfr.Recording;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.infra.IterationParams;
+import org.openjdk.jmh.runner.IterationType;
+
+/**
+ * Overhead of the chunk instrumentation on the shared pool analysers: none (NOOP,
+ * nothing measured), in memory histograms, JFR events with a recording running,
+ * and both. The scores should stay within 1% of none; the histograms and the
+ * workers utilization are kept per iteration and printed at the end of each
+ * measurement iteration, so warmup and the pauses between iterations are left out.
+ */
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 10)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class InstrumentationBenchmark {
+
+
+
+    @State(Scope.Benchmark)
+    public static class ExecutionPlan {
+
+        @Param({ "4" })
+        public int threads;
+
+        @Param({ "none", "histogram", "jfr", "all" })
+        public String metrics;
+
+        public int chunkSize = 10;
+        public int dataSize = 64*3*10;
+        public double periodMin = 18;
+        public double periodMax = 36;
+        int jtkSize = 64*5*10;
+        int length = 50;
+
+        List<TimeSeries> series;
+        double[][] jtkData;
+        double[] zts;
+        List<JTKPattern> patterns;
+
+        ExecutorService pool;
+        HistogramMetrics histograms;
+        Recording recording;
+        SharedPPAAnalyser fft;
+        SharedJTKAnalyser jtk;
+
+        @Setup(Level.Trial)
+        public void setUp() throws RobustFormatException, IOException {
+            series = new PPABenchmark.ExecutionPlan().readTSData(dataSize);
+            jtkData = EJTKBenchmark.makeData(jtkSize, length);
+            zts = EJTKBenchmark.makeTimes(0, length, 1);
+            patterns = ReferenceTables.eJTKClassic();
+
+            histograms = new HistogramMetrics();
+            AnalysisMetrics chosen;
+            switch (metrics) {
+                case "none": chosen = AnalysisMetrics.NOOP; break;
+                case "histogram": chosen = histograms; break;
+                case "jfr": chosen = new JfrMetrics(); break;
+                case "all": chosen = histograms.and(new JfrMetrics()); break;
+                default: throw new IllegalArgumentException("Unknown metrics: "+metrics);
+            }
+            if (metrics.equals("jfr") || metrics.equals("all")) {
+                recording = new Recording();
+                recording.enable(AnalysisChunkEvent.class);
+                recording.setToDisk(false);
+                recording.start();
+            }
+
+            pool = AnalysisExecutors.newPool(AnalysisExecutors.Kind.FIXED, threads);
+            fft = new SharedPPAAnalyser(pool, () -> new FFTMultiAnalyser2(1), "fft", chosen);
+            jtk = new SharedJTKAnalyser(pool, () -> new BD2JTK(1), "jtk", chosen);
+        }
+
+        @Setup(Level.Iteration)
+        public void resetHistograms() {
+            histograms.clear();
+        }
+
+        @TearDown(Level.Iteration)
+        public void printHistograms(IterationParams iteration) {
+            if (iteration.getType() != IterationType.MEASUREMENT) return;
+            histograms.all().forEach((method, stats) -> System.out.printf("%n%s utilization: %.3f%n%s%n",
+                    method, stats.utilization(threads), stats));
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() {
+            pool.shutdown();
+            if (recording != null) recording.close();
+        }
+    }
+
+    @Benchmark
+    public Object fft(ExecutionPlan params, Blackhole blackHole) {
+
+        Object results = params.fft.analyse(params.series, params.periodMin, params.periodMax, params.chunkSize);
+        blackHole.consume(results);
+        return results;
+    }
+
+    @Benchmark
+    public Object jtk(ExecutionPlan params, Blackhole blackHole) {
+
+        Object results = params.jtk.analyseData(params.jtkData, params.zts, params.patterns, params.chunkSize);
+        blackHole.consume(results);
+        return results;
+    }
+}
@@ -0,0 +1,53 @@
+
+
+package ed.biodare.test;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.List;
+import java.util.concurrent.Callable;
+
+/**
+ * Wraps chunk tasks so they report their queue wait, compute time and allocation
+ * to the metrics. Must be called when the task is submitted, that is when the
+ * queue wait starts.
+ */
+final class Instrumented {
+
+    static final com.sun.management.ThreadMXBean THREADS = allocationBean();
+
+    private Instrumented() {}
+
+    static <R> Callable<List<R>> chunk(String method, int items, Callable<List<R>> task, AnalysisMetrics metrics) {
+
+        if (!metrics.enabled()) return task;
+
+        long submitted = System.nanoTime();
+        return () -> {
+            long start = System.nanoTime();
+            long allocStart = allocatedBytes();
+            List<R> res = task.call();
+            long end = System.nanoTime();
+            long allocEnd = allocatedBytes();
+            metrics.chunk(method, items, start - submitted, end - start, allocStart < 0 ? -1 : allocEnd - allocStart);
+            return res;
+        };
+    }
+
+    /**
+     * Bytes allocated so far by the current thread, -1 where the JVM cannot tell.
+     */
+    static long allocatedBytes() {
+        return THREADS == null ? -1 : THREADS.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    static com.sun.management.ThreadMXBean allocationBean() {
+
+        ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (!(bean instanceof com.sun.management.ThreadMXBean)) return null;
+        com.sun.management.ThreadMXBean sunBean = (com.sun.management.ThreadMXBean) bean;
+        if (!sunBean.isThreadAllocatedMemorySupported()) return null;
+        if (!sunBean.isThreadAllocatedMemoryEnabled()) sunBean.setThreadAllocatedMemoryEnabled(true);
+        return sunBean;
+    }
+}
@@ -0,0 +1,76 @@
+
+
+package ed.biodare.test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * eJTK style reference waveform: a cosine with its peak at phase and its trough
+ * nadir hours later, so asymmetric waves are covered as well.
+ *
+ * Values are quantized (level) so that time points at the same position of the
+ * cycle compare as exact ties, as they do in the reference series of eJTK.
+ */
+public final class JTKReference {
+
+    static final double QUANTUM = 1e9;
+
+    final double period;
+    final double phase;
+    final double nadir;
+
+    public JTKReference(double period, double phase, double nadir) {
+        if (period <= 0) throw new IllegalArgumentException("Period must be positive not: "+period);
+        if (nadir <= 0 || nadir >= period) throw new IllegalArgumentException("Nadir must be within the period not: "+nadir);
+        this.period = period;
+        this.phase = phase;
+        this.nadir = nadir;
+    }
+
+    /**
+     * Period 24, phases 0..22 and nadirs 2..22 every 2 hours, the grid of eJTK classic.
+     */
+    public static List<JTKReference> classic() {
+
+        List<JTKReference> refs = new ArrayList<>();
+        for (int phase = 0; phase < 24; phase+=2) {
+            for (int nadir = 2; nadir < 24; nadir+=2) {
+                refs.add(new JTKReference(24, phase, nadir));
+            }
+        }
+        return refs;
+    }
+
+    public double value(double time) {
+
+        double u = (time - phase) % period;
+        if (u < 0) u += period;
+        return u < nadir
+                ? Math.cos(Math.PI * u / nadir)
+                : Math.cos(Math.PI * (period - u) / (period - nadir));
+    }
+
+    public long level(double time) {
+        return Math.round(value(time)*QUANTUM);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31*(31*Double.hashCode(period) + Double.hashCode(phase)) + Double.hashCode(nadir);
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (!(obj instanceof JTKReference)) return false;
+        JTKReference other = (JTKReference) obj;
+        return Double.compare(period, other.period) == 0
+                && Double.compare(phase, other.phase) == 0
+                && Double.compare(nadir, other.nadir) == 0;
+    }
+
+    @Override
+    public String toString() {
+        return "JTKReference{" + "period=" + period + ", phase=" + phase + ", nadir=" + nadir + '}';
+    }
+}
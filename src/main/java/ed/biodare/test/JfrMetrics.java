@@ -0,0 +1,24 @@
+
+
+package ed.biodare.test;
+
+/**
+ * Emits every chunk as an AnalysisChunkEvent; costs only the enabled check when
+ * no recording collects the event.
+ */
+public class JfrMetrics implements AnalysisMetrics {
+
+    @Override
+    public void chunk(String method, int items, long queueNanos, long computeNanos, long allocatedBytes) {
+
+        AnalysisChunkEvent event = new AnalysisChunkEvent();
+        if (!event.shouldCommit()) return;
+
+        event.method = method;
+        event.items = items;
+        event.queueWait = queueNanos;
+        event.computeTime = computeNanos;
+        event.allocated = allocatedBytes;
+        event.commit();
+    }
+}
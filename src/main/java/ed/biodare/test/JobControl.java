@@ -0,0 +1,71 @@
+
+
+package ed.biodare.test;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cooperative stop signal of an analysis job: cancelled by the caller or expired
+ * at its deadline. Chunked analyses check it before starting every chunk, so once
+ * stopped only the chunks already running are finished.
+ */
+public final class JobControl {
+
+    final long deadlineNanos;
+    final List<Runnable> onCancel = new CopyOnWriteArrayList<>();
+    volatile boolean cancelled;
+
+    JobControl(long deadlineNanos) {
+        this.deadlineNanos = deadlineNanos;
+    }
+
+    public static JobControl unlimited() {
+        return new JobControl(Long.MAX_VALUE);
+    }
+
+    public static JobControl withTimeout(long timeout, TimeUnit unit) {
+        return new JobControl(System.nanoTime() + unit.toNanos(timeout));
+    }
+
+    public void cancel() {
+        cancelled = true;
+        onCancel.forEach(Runnable::run);
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    public boolean isExpired() {
+        return deadlineNanos != Long.MAX_VALUE && System.nanoTime() - deadlineNanos >= 0;
+    }
+
+    public boolean shouldStop() {
+        return cancelled || isExpired();
+    }
+
+    /**
+     * Nanos left till the deadline, Long.MAX_VALUE without one.
+     */
+    public long remainingNanos() {
+        return deadlineNanos == Long.MAX_VALUE ? Long.MAX_VALUE : Math.max(0, deadlineNanos - System.nanoTime());
+    }
+
+    PartialResults.Status stopStatus() {
+        return cancelled ? PartialResults.Status.CANCELLED : PartialResults.Status.EXPIRED;
+    }
+
+    /**
+     * Run on cancel (by the cancelling thread), e.g. to wake up a waiting collector.
+     */
+    void addCancelListener(Runnable listener) {
+        onCancel.add(listener);
+        if (cancelled) listener.run();
+    }
+
+    void removeCancelListener(Runnable listener) {
+        onCancel.remove(listener);
+    }
+}
@@ -0,0 +1,158 @@
+
+
+package ed.biodare.test;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Minimal json parser, enough to read back the JMH result files without another
+ * dependency. Objects become LinkedHashMaps, arrays Lists, numbers Doubles, and
+ * the rest Strings, Booleans or null. JMH writes NaN and infinite scores as the
+ * strings "NaN", "+INF" and "-INF", they are left as Strings, see
+ * RegressionHarness.score.
+ */
+final class JsonReader {
+
+    final String text;
+    int pos;
+
+    JsonReader(String text) {
+        this.text = text;
+    }
+
+    static Object parse(String text) {
+
+        JsonReader reader = new JsonReader(text);
+        Object value = reader.value();
+        reader.skipSpaces();
+        if (reader.pos != text.length()) throw reader.error("Trailing content");
+        return value;
+    }
+
+    Object value() {
+
+        skipSpaces();
+        if (pos >= text.length()) throw error("Unexpected end");
+        char c = text.charAt(pos);
+        switch (c) {
+            case '{': return object();
+            case '[': return array();
+            case '"': return string();
+            case 't': return literal("true", Boolean.TRUE);
+            case 'f': return literal("false", Boolean.FALSE);
+            case 'n': return literal("null", null);
+            default: return number();
+        }
+    }
+
+    Map<String, Object> object() {
+
+        Map<String, Object> map = new LinkedHashMap<>();
+        expect('{');
+        skipSpaces();
+        if (peek('}')) {
+            pos++;
+            return map;
+        }
+        do {
+            skipSpaces();
+            String key = string();
+            skipSpaces();
+            expect(':');
+            map.put(key, value());
+            skipSpaces();
+        } while (next(','));
+        expect('}');
+        return map;
+    }
+
+    List<Object> array() {
+
+        List<Object> list = new ArrayList<>();
+        expect('[');
+        skipSpaces();
+        if (peek(']')) {
+            pos++;
+            return list;
+        }
+        do {
+            list.add(value());
+            skipSpaces();
+        } while (next(','));
+        expect(']');
+        return list;
+    }
+
+    String string() {
+
+        expect('"');
+        StringBuilder out = new StringBuilder();
+        while (true) {
+            if (pos >= text.length()) throw error("Unterminated string");
+            char c = text.charAt(pos++);
+            if (c == '"') return out.toString();
+            if (c != '\\') {
+                out.append(c);
+                continue;
+            }
+            if (pos >= text.length()) throw error("Unterminated string");
+            char e = text.charAt(pos++);
+            switch (e) {
+                case 'b': out.append('\b'); break;
+                case 'f': out.append('\f'); break;
+                case 'n': out.append('\n'); break;
+                case 'r': out.append('\r'); break;
+                case 't': out.append('\t'); break;
+                case 'u':
+                    if (pos+4 > text.length()) throw error("Bad unicode escape");
+                    out.append((char) Integer.parseInt(text.substring(pos, pos+4), 16));
+                    pos += 4;
+                    break;
+                default: out.append(e);
+            }
+        }
+    }
+
+    Double number() {
+
+        int start = pos;
+        while (pos < text.length() && "+-0123456789.eE".indexOf(text.charAt(pos)) >= 0) pos++;
+        if (start == pos) throw error("Unexpected character '"+text.charAt(pos)+"'");
+        try {
+            return Double.valueOf(text.substring(start, pos));
+        } catch (NumberFormatException e) {
+            throw error("Bad number "+text.substring(start, pos));
+        }
+    }
+
+    Object literal(String token, Object value) {
+        if (!text.startsWith(token, pos)) throw error("Unexpected token");
+        pos += token.length();
+        return value;
+    }
+
+    void skipSpaces() {
+        while (pos < text.length() && Character.isWhitespace(text.charAt(pos))) pos++;
+    }
+
+    boolean peek(char c) {
+        return pos < text.length() && text.charAt(pos) == c;
+    }
+
+    boolean next(char c) {
+        if (!peek(c)) return false;
+        pos++;
+        return true;
+    }
+
+    void expect(char c) {
+        if (!next(c)) throw error("Expected '"+c+"'");
+    }
+
+    IllegalArgumentException error(String message) {
+        return new IllegalArgumentException(message+" at "+pos+" in json");
+    }
+}
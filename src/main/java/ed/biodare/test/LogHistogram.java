@@ -0,0 +1,99 @@
+
+
+package ed.biodare.test;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock free histogram of non negative longs with HDR style log linear buckets:
+ * every power of two range is split into 2^precisionBits equal sub buckets, so
+ * the relative error of a recorded value is below 2^-precisionBits for any magnitude.
+ */
+public final class LogHistogram {
+
+    final int precisionBits;
+    final int subBuckets;
+    final AtomicLongArray counts;
+    final LongAdder total = new LongAdder();
+    final LongAdder sum = new LongAdder();
+    final AtomicLong max = new AtomicLong();
+
+    public LogHistogram() {
+        this(5);
+    }
+
+    public LogHistogram(int precisionBits) {
+        if (precisionBits < 1 || precisionBits > 10) throw new IllegalArgumentException("Precision bits must be 1-10 not: "+precisionBits);
+        this.precisionBits = precisionBits;
+        this.subBuckets = 1 << precisionBits;
+        this.counts = new AtomicLongArray((64 - precisionBits)*subBuckets);
+    }
+
+    public void record(long value) {
+
+        if (value < 0) value = 0;
+        counts.incrementAndGet(index(value));
+        total.increment();
+        sum.add(value);
+        long m;
+        while (value > (m = max.get()) && !max.compareAndSet(m, value)) {
+            // retry
+        }
+    }
+
+    int index(long value) {
+
+        // values below subBuckets are exact (group 0), then one group per power of two
+        if (value < subBuckets) return (int) value;
+        int shift = 64 - Long.numberOfLeadingZeros(value) - precisionBits - 1;
+        return (shift+1)*subBuckets + (int) ((value >>> shift) - subBuckets);
+    }
+
+    long lowestValue(int index) {
+
+        int group = index / subBuckets;
+        long sub = index % subBuckets;
+        return group == 0 ? sub : (sub + subBuckets) << (group - 1);
+    }
+
+    public long count() {
+        return total.sum();
+    }
+
+    public double mean() {
+        long n = count();
+        return n == 0 ? 0 : (double) sum.sum() / n;
+    }
+
+    public long max() {
+        return max.get();
+    }
+
+    public long sum() {
+        return sum.sum();
+    }
+
+    /**
+     * Lower bound of the bucket holding the given percentile (0-100).
+     */
+    public long percentile(double percentile) {
+
+        long n = count();
+        if (n == 0) return 0;
+        long rank = Math.max(1, (long) Math.ceil(percentile / 100 * n));
+        long seen = 0;
+        for (int i = 0; i < counts.length(); i++) {
+            seen += counts.get(i);
+            if (seen >= rank) return lowestValue(i);
+        }
+        return max();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("n=%d mean=%.0f p50=%d p90=%d p99=%d max=%d",
+                count(), mean(), percentile(50), percentile(90), percentile(99), max());
+    }
+}
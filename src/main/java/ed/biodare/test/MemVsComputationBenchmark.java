@@ -3,18 +3,16 @@
 package ed.biodare.test;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Comparator;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Random;
 import java.util.concurrent.Callable;
-import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
-import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
-import java.util.stream.Collectors;
 import org.apache.commons.math3.util.Pair;
 import org.openjdk.jmh.annotations.Benchmark;
 import org.openjdk.jmh.annotations.BenchmarkMode;
@@ -56,7 +54,7 @@ public class MemVsComputationBenchmark {
         List<double[]> patterns;
         List<double[]> data;
 
-        @Setup(Level.Invocation)
+        @Setup(Level.Trial)
         public void setUp() {
             patterns = makeDatas(patternSize, length);
             data = makeDatas(dataSize, length);
@@ -82,31 +80,24 @@ public class MemVsComputationBenchmark {
     Pair<Long, Double> clockTasks(List<Callable<Double>> tasks, int threads) {
         
         ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try {
+            return clockTasks(tasks, pool);
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    Pair<Long, Double> clockTasks(List<Callable<Double>> tasks, ExecutorService pool) {
         
         long sT = System.currentTimeMillis();
         
-        List<Future<Double>> results = tasks.stream()
-                .map( task -> pool.submit(task))
-                .collect(Collectors.toList());
-        
-        
-        pool.shutdown();
-        try {
-            
-            double val = 0;
-            
-            for (Future<Double> f : results) {
-                
-                val+=f.get();
-            }
-            
-            long dur = System.currentTimeMillis() - sT;
-            return new Pair<>(dur, val);
-        } catch (InterruptedException| ExecutionException e) {
-            pool.shutdownNow();
-            throw new RuntimeException("Interrupted analysis in parallel "+e.getMessage(),e);
-        }
+        // summed as the chunks complete, not in submission order
+        double val = new CompletionAggregator<Double>(pool, Double::doubleValue)
+                .submitAll(tasks)
+                .awaitSum();
         
+        long dur = System.currentTimeMillis() - sT;
+        return new Pair<>(dur, val);
     }    
     
 
@@ -145,24 +136,29 @@ public class MemVsComputationBenchmark {
     
 
     
-    static double[] makeData(int length) {
-
-        Random rnd = new Random();
-        double[] data = new double[length];
+    // compute only (non memalloc) convolute over cached cosine vectors
+    double convoluteCached(List<double[]> datas, List<double[]> patterns, CosineCache cache) {
         
-        for (int i = 0; i< data.length; i++) {
-            data[i] = rnd.nextDouble()*100;
+        // one cache lookup per vector of the chunk, not per data x pattern pair
+        double[][] xs = new double[datas.size()][];
+        for (int i = 0; i < xs.length; i++) {
+            xs[i] = cache.cosines(datas.get(i));
         }
-        return data;
-    } 
+
+        double val = 0;
+        for (double[] pattern : patterns) {
+            double[] y = cache.cosines(pattern);
+            for (double[] x : xs) {
+                val += 2 * DotProducts.dot(x, y);
+            }
+        }
+        return val;
+    }
+    
+
     
     static List<double[]> makeDatas(int size, int length) {
 
-        List<double[]> datas = new ArrayList<>(size);
-        
-        for (int i = 0; i< size; i++) {
-            datas.add(makeData(length));
-        }
-        return datas;
+        return new ArrayList<>(Arrays.asList(Datasets.uniform(size, length, 0, 100, Datasets.seed("memvs", size, length))));
     }     
 }
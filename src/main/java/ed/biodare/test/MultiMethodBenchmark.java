@@ -0,0 +1,100 @@
+
+
+package ed.biodare.test;
+
+import ed.robust.dom.data.TimeSeries;
+import ed.robust.dom.tsprocessing.PPAResult;
+import ed.robust.error.RobustFormatException;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Results of several PPA methods for the same data: one analyser pass per method
+ * (as PPABenchmark does) against the combined pipeline. When detrend is on, the
+ * sequential passes prepare the data again for every method, as separate jobs would.
+ */
+@Fork(1)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class MultiMethodBenchmark {
+
+
+
+    @State(Scope.Benchmark)
+    public static class ExecutionPlan {
+
+        @Param({ "1", "4", "8" })
+        public int threads;
+
+        @Param({ "fft,mesa", "fft,mesa,lspr,sr" })
+        public String methods;
+
+        @Param({ "false", "true" })
+        public boolean detrend;
+
+        public int chunkSize = 10;
+        public int dataSize = 64*3*10;
+        public double periodMin = 18;
+        public double periodMax = 36;
+
+        List<String> methodList;
+        List<TimeSeries> data;
+        ExecutorService pool;
+        MultiMethodPPA pipeline;
+
+        @Setup(Level.Trial)
+        public void setUp() throws RobustFormatException, IOException {
+            methodList = Arrays.asList(methods.split(","));
+            data = new PPABenchmark.ExecutionPlan().readTSData(dataSize);
+            pool = AnalysisExecutors.newPool(AnalysisExecutors.Kind.FIXED, threads);
+            pipeline = new MultiMethodPPA(pool, methodList, detrend, 0);
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() {
+            pool.shutdown();
+        }
+    }
+
+    @Benchmark
+    public Map<String, List<PPAResult>> sequential(ExecutionPlan params, Blackhole blackHole) {
+
+        Map<String, List<PPAResult>> results = new LinkedHashMap<>();
+        for (String method : params.methodList) {
+            List<TimeSeries> prepared = MultiMethodPPA.prepare(params.data, params.detrend, 0);
+            results.put(method, MultiMethodPPA.analyserFactory(method).apply(params.threads)
+                    .analyse(prepared, params.periodMin, params.periodMax, params.chunkSize, params.threads));
+        }
+        blackHole.consume(results);
+        return results;
+    }
+
+    @Benchmark
+    public Map<String, List<PPAResult>> batched(ExecutionPlan params, Blackhole blackHole) {
+
+        Map<String, List<PPAResult>> results = params.pipeline.analyse(params.data, params.periodMin, params.periodMax, params.chunkSize);
+        blackHole.consume(results);
+        return results;
+    }
+}
@@ -0,0 +1,182 @@
+
+
+package ed.biodare.test;
+
+import ed.biodare.period.PPAMultiAnalyser;
+import ed.biodare.period.epr.EPRMultiAnalyser;
+import ed.biodare.period.fft_nlls.FFTMultiAnalyser2;
+import ed.biodare.period.lspr.LSPRMultiAnalyser;
+import ed.biodare.period.mesa.MESAMultiAnalyser;
+import ed.biodare.period.mfourfit.MFourFitMultiAnalyser;
+import ed.biodare.period.sr.SRMultiAnalyser;
+import ed.robust.dom.data.TimeSeries;
+import ed.robust.dom.tsprocessing.PPAResult;
+import ed.robust.dom.util.Pair;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.function.IntFunction;
+
+/**
+ * Several PPA methods over the same data in one scheduling pass.
+ *
+ * Every chunk is prepared once (times and values extracted, optionally detrended
+ * and resampled to a regular step) by the worker which then runs all the requested
+ * methods on it with its own single threaded analysers. Results are returned per
+ * method, in the data order.
+ */
+public class MultiMethodPPA {
+
+    public static IntFunction<PPAMultiAnalyser> analyserFactory(String method) {
+        switch (method) {
+            case "fft": return FFTMultiAnalyser2::new;
+            case "mff": return MFourFitMultiAnalyser::new;
+            case "mesa": return MESAMultiAnalyser::new;
+            case "epr": return EPRMultiAnalyser::new;
+            case "lspr": return LSPRMultiAnalyser::new;
+            case "sr": return SRMultiAnalyser::new;
+            default: throw new IllegalArgumentException("Unknown method: "+method);
+        }
+    }
+
+    final ExecutorService pool;
+    final List<String> methods;
+    final boolean detrend;
+    final double resampleStep;
+    final ThreadLocal<PPAMultiAnalyser[]> analysers;
+
+    /**
+     * @param resampleStep step of the regular grid the series are interpolated on, 0 to keep the original times
+     */
+    public MultiMethodPPA(ExecutorService pool, List<String> methods, boolean detrend, double resampleStep) {
+        if (methods.isEmpty()) throw new IllegalArgumentException("No methods given");
+        this.pool = pool;
+        this.methods = List.copyOf(methods);
+        this.detrend = detrend;
+        this.resampleStep = resampleStep;
+
+        List<IntFunction<PPAMultiAnalyser>> factories = new ArrayList<>();
+        for (String method : methods) factories.add(analyserFactory(method));
+        this.analysers = ThreadLocal.withInitial(() -> {
+            PPAMultiAnalyser[] perMethod = new PPAMultiAnalyser[factories.size()];
+            for (int i = 0; i < perMethod.length; i++) perMethod[i] = factories.get(i).apply(1);
+            return perMethod;
+        });
+    }
+
+    public Map<String, List<PPAResult>> analyse(List<TimeSeries> data, double periodMin, double periodMax, int chunkSize) {
+
+        List<Callable<List<PPAResult[]>>> tasks = new ArrayList<>();
+        for (List<TimeSeries> part : Chunks.split(data, chunkSize)) {
+            tasks.add( () -> analyseChunk(part, periodMin, periodMax));
+        }
+        List<PPAResult[]> rows = Chunks.runInOrder(pool, tasks);
+
+        Map<String, List<PPAResult>> results = new LinkedHashMap<>();
+        for (int m = 0; m < methods.size(); m++) {
+            List<PPAResult> column = new ArrayList<>(rows.size());
+            for (PPAResult[] row : rows) column.add(row[m]);
+            results.put(methods.get(m), column);
+        }
+        return results;
+    }
+
+    List<PPAResult[]> analyseChunk(List<TimeSeries> part, double periodMin, double periodMax) {
+
+        List<TimeSeries> prepared = prepare(part, detrend, resampleStep);
+
+        PPAMultiAnalyser[] perMethod = analysers.get();
+        List<PPAResult[]> rows = new ArrayList<>(prepared.size());
+        for (int i = 0; i < prepared.size(); i++) rows.add(new PPAResult[perMethod.length]);
+
+        for (int m = 0; m < perMethod.length; m++) {
+            List<PPAResult> results = perMethod[m].analyse(prepared, periodMin, periodMax, prepared.size(), 1);
+            for (int i = 0; i < results.size(); i++) rows.get(i)[m] = results.get(i);
+        }
+        return rows;
+    }
+
+    static List<TimeSeries> prepare(List<TimeSeries> data, boolean detrend, double resampleStep) {
+
+        if (!detrend && resampleStep <= 0) return data;
+
+        List<TimeSeries> prepared = new ArrayList<>(data.size());
+        for (TimeSeries series : data) {
+            Pair<double[], double[]> tv = series.getTimesAndValues();
+            double[] times = tv.getLeft();
+            double[] values = tv.getRight();
+
+            if (resampleStep > 0) {
+                double[] grid = grid(times, resampleStep);
+                values = interpolate(times, values, grid);
+                times = grid;
+            } else {
+                values = values.clone();
+            }
+            if (detrend) detrend(times, values);
+            prepared.add(new TimeSeries(times, values));
+        }
+        return prepared;
+    }
+
+    /**
+     * Removes the least squares line, in place.
+     */
+    static void detrend(double[] times, double[] values) {
+
+        int n = times.length;
+        if (n < 2) return;
+
+        double mt = 0, mv = 0;
+        for (int i = 0; i < n; i++) {
+            mt += times[i];
+            mv += values[i];
+        }
+        mt /= n;
+        mv /= n;
+
+        double stv = 0, stt = 0;
+        for (int i = 0; i < n; i++) {
+            double dt = times[i] - mt;
+            stv += dt*(values[i] - mv);
+            stt += dt*dt;
+        }
+        double slope = stt == 0 ? 0 : stv / stt;
+        for (int i = 0; i < n; i++) {
+            values[i] -= mv + slope*(times[i] - mt);
+        }
+    }
+
+    static double[] grid(double[] times, double step) {
+
+        if (times.length == 0) return times;
+        int points = (int) Math.floor((times[times.length-1] - times[0]) / step + 1e-9) + 1;
+        double[] grid = new double[points];
+        for (int i = 0; i < points; i++) grid[i] = times[0] + i*step;
+        return grid;
+    }
+
+    /**
+     * Linear interpolation of the (sorted) series at the grid points.
+     */
+    static double[] interpolate(double[] times, double[] values, double[] grid) {
+
+        double[] res = new double[grid.length];
+        int j = 0;
+        for (int i = 0; i < grid.length; i++) {
+            double t = grid[i];
+            while (j < times.length-2 && times[j+1] < t) j++;
+            if (times.length == 1) {
+                res[i] = values[0];
+                continue;
+            }
+            double span = times[j+1] - times[j];
+            double w = span == 0 ? 0 : (t - times[j]) / span;
+            res[i] = values[j] + w*(values[j+1] - values[j]);
+        }
+        return res;
+    }
+}
@@ -0,0 +1,125 @@
+
+
+package ed.biodare.test;
+
+import ed.biodare.period.PPAMultiAnalyser;
+import ed.biodare.period.fft_nlls.FFTMultiAnalyser2;
+import ed.robust.dom.data.TimeSeries;
+import ed.robust.dom.tsprocessing.PPAResult;
+import ed.robust.error.RobustFormatException;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntFunction;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * N concurrent requests of M series each, every request either starting its own
+ * platform thread analyser (as the service does now) or running on virtual
+ * threads under the global CPU permits. The virtual mode needs JDK 21+.
+ */
+@Fork(1)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class MultiTenantBenchmark {
+
+
+
+    @State(Scope.Benchmark)
+    public static class ExecutionPlan {
+
+        @Param({ "4", "16", "64" })
+        public int requests;
+
+        @Param({ "20", "200" })
+        public int seriesPerRequest;
+
+        /** platform threads per request in the platform mode */
+        @Param({ "4" })
+        public int threads;
+
+        public int chunkSize = 10;
+        public double periodMin = 18;
+        public double periodMax = 36;
+
+        List<TimeSeries> series;
+        ExecutorService callers;
+        VirtualThreadPPAAnalyser virtual;
+
+        @Setup(Level.Trial)
+        public void setUp() throws RobustFormatException, IOException {
+            series = requestSeries(seriesPerRequest);
+            // request handling threads, they only wait for the analysis
+            callers = Executors.newCachedThreadPool();
+            virtual = new VirtualThreadPPAAnalyser(() -> new FFTMultiAnalyser2(1));
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() {
+            callers.shutdown();
+        }
+    }
+
+    @Benchmark
+    public List<PPAResult> platformPerRequest(ExecutionPlan params, Blackhole blackHole) {
+
+        return runRequests(params, blackHole, () -> platformRequest(FFTMultiAnalyser2::new, params.series,
+                params.periodMin, params.periodMax, params.chunkSize, params.threads));
+    }
+
+    @Benchmark
+    public List<PPAResult> virtualWithPermits(ExecutionPlan params, Blackhole blackHole) {
+
+        if (!AnalysisExecutors.virtualThreadsSupported()) {
+            throw new IllegalStateException("Virtual threads need JDK 21+, build and run with -Ploom");
+        }
+        return runRequests(params, blackHole, () -> params.virtual.analyse(params.series, params.periodMin, params.periodMax, params.chunkSize));
+    }
+
+    List<PPAResult> runRequests(ExecutionPlan params, Blackhole blackHole, Callable<List<PPAResult>> request) {
+
+        List<Callable<List<PPAResult>>> requests = new ArrayList<>();
+        for (int i = 0; i < params.requests; i++) {
+            requests.add(request);
+        }
+        List<PPAResult> results = Chunks.runInOrder(params.callers, requests);
+        blackHole.consume(results);
+        return results;
+    }
+
+    /**
+     * The series of one tenant's request.
+     */
+    static List<TimeSeries> requestSeries(int seriesPerRequest) throws RobustFormatException, IOException {
+        return new PPABenchmark.ExecutionPlan().readTSData(seriesPerRequest);
+    }
+
+    /**
+     * One request as the service handles it now, on a new analyser with its own threads.
+     */
+    static List<PPAResult> platformRequest(IntFunction<PPAMultiAnalyser> analysers, List<TimeSeries> series,
+            double periodMin, double periodMax, int chunkSize, int threads) {
+
+        PPAMultiAnalyser analyser = analysers.apply(threads);
+        return analyser.analyse(series, periodMin, periodMax, chunkSize, threads);
+    }
+}
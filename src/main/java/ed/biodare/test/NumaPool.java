@@ -0,0 +1,150 @@
+
+
+package ed.biodare.test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Worker pool with a separate group of threads per NUMA node, each thread pinned
+ * (best effort, Linux taskset) to the cpus of its node.
+ *
+ * Work is addressed by partition, partition p always goes to node p % nodes. When
+ * a partition's data is also allocated by a task of the same partition (see allocate),
+ * the kernel's first touch policy, and the node local eden with -XX:+UseNUMA, keep the
+ * data and its processing on the same socket.
+ */
+public class NumaPool implements AutoCloseable {
+
+    final NumaTopology topology;
+    final List<ExecutorService> groups = new ArrayList<>();
+    final AtomicInteger pinned = new AtomicInteger();
+
+    public NumaPool(NumaTopology topology, int threadsPerNode, boolean pin) {
+
+        if (threadsPerNode < 1) throw new IllegalArgumentException("Threads per node must be positive not: "+threadsPerNode);
+        this.topology = topology;
+        for (int node = 0; node < topology.size(); node++) {
+            groups.add(Executors.newFixedThreadPool(threadsPerNode, nodeThreads(node, pin)));
+        }
+    }
+
+    public int nodes() {
+        return groups.size();
+    }
+
+    public int node(int partition) {
+        return Math.floorMod(partition, groups.size());
+    }
+
+    public <T> Future<T> submit(int partition, Callable<T> task) {
+        return groups.get(node(partition)).submit(task);
+    }
+
+    /**
+     * Creates a partition's data on a worker of its node, so it is first touched there.
+     */
+    public <T> T allocate(int partition, Callable<T> factory) {
+        return get(submit(partition, factory));
+    }
+
+    /**
+     * Runs one task per partition on the partitions' nodes, results in partition order.
+     */
+    public <T> List<T> runPartitioned(List<Callable<T>> partitionTasks) {
+
+        List<Future<T>> futures = new ArrayList<>(partitionTasks.size());
+        for (int p = 0; p < partitionTasks.size(); p++) {
+            futures.add(submit(p, partitionTasks.get(p)));
+        }
+
+        List<T> results = new ArrayList<>(futures.size());
+        try {
+            for (Future<T> f : futures) results.add(get(f));
+        } catch (RuntimeException e) {
+            futures.forEach( f -> f.cancel(true));
+            throw e;
+        }
+        return results;
+    }
+
+    /**
+     * Number of worker threads which could be pinned to their node's cpus.
+     */
+    public int pinnedThreads() {
+        return pinned.get();
+    }
+
+    @Override
+    public void close() {
+        groups.forEach(ExecutorService::shutdown);
+        for (ExecutorService group : groups) {
+            try {
+                if (!group.awaitTermination(1, TimeUnit.SECONDS)) group.shutdownNow();
+            } catch (InterruptedException e) {
+                group.shutdownNow();
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    static <T> T get(Future<T> future) {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted analysis in parallel "+e.getMessage(), e);
+        } catch (ExecutionException e) {
+            throw new RuntimeException("Failed analysis in parallel "+e.getCause().getMessage(), e.getCause());
+        }
+    }
+
+    ThreadFactory nodeThreads(int node, boolean pin) {
+
+        String cpus = NumaTopology.toCpuList(topology.cpus(node));
+        AtomicInteger counter = new AtomicInteger();
+        return (Runnable r) -> {
+            Thread t = new Thread(() -> {
+                if (pin && pinCurrentThread(cpus)) pinned.incrementAndGet();
+                r.run();
+            }, "analysis-node"+node+"-"+counter.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        };
+    }
+
+    /**
+     * Restricts the calling thread to the cpus with taskset on its native thread
+     * id, which Linux exposes as the /proc/thread-self link. Returns false where
+     * this is not possible.
+     */
+    static boolean pinCurrentThread(String cpus) {
+
+        try {
+            Path self = Files.readSymbolicLink(Paths.get("/proc/thread-self"));
+            String tid = self.getFileName().toString();
+            Process taskset = new ProcessBuilder("taskset", "-p", "-c", cpus, tid)
+                    .redirectErrorStream(true)
+                    .redirectOutput(ProcessBuilder.Redirect.DISCARD)
+                    .start();
+            return taskset.waitFor() == 0;
+        } catch (IOException | UnsupportedOperationException e) {
+            return false;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+}
@@ -0,0 +1,143 @@
+
+
+package ed.biodare.test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Pattern tables over partitioned data: a plain fixed pool over data created by
+ * the setup thread, against the NUMA pool where every partition is created and
+ * processed by the workers of one node.
+ *
+ * nodes=1 and 2 use the real sockets when there are that many, otherwise the cpus
+ * are split into simulated nodes (the setup prints which).
+ */
+@Fork(value = 1, jvmArgsAppend = "-XX:+UseNUMA")
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class NumaPoolBenchmark {
+
+
+
+    @State(Scope.Benchmark)
+    public static class ExecutionPlan {
+
+        @Param({ "1", "2" })
+        public int nodes;
+
+        @Param({ "4", "8" })
+        public int threads;
+
+        @Param({ "true" })
+        public boolean pin;
+
+        int partitionsPerNode = 8;
+        int rowsPerPartition = 2048;
+        int patternSize = 80;
+        int length = 50;
+
+        PatternMatrix patterns;
+        List<double[][]> plainPartitions;
+        ExecutorService plainPool;
+
+        List<double[][]> numaPartitions;
+        List<PatternMatrix> numaPatterns;
+        NumaPool numaPool;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            patterns = PatternMatrix.of(SmallTablesBenchmark.makePatterns(patternSize, length));
+
+            int partitions = nodes*partitionsPerNode;
+            plainPartitions = new ArrayList<>();
+            for (int p = 0; p < partitions; p++) {
+                plainPartitions.add(SmallTablesBenchmark.makeData(rowsPerPartition, length));
+            }
+            plainPool = AnalysisExecutors.newPool(AnalysisExecutors.Kind.FIXED, threads);
+
+            NumaTopology topology = NumaTopology.withNodes(nodes);
+            numaPool = new NumaPool(topology, Math.max(1, threads / nodes), pin);
+            numaPartitions = new ArrayList<>();
+            for (int p = 0; p < partitions; p++) {
+                double[][] source = plainPartitions.get(p);
+                numaPartitions.add(numaPool.allocate(p, () -> copy(source)));
+            }
+            // patterns are read by every row, so each node gets its own copy
+            numaPatterns = new ArrayList<>();
+            for (int node = 0; node < nodes; node++) {
+                numaPatterns.add(numaPool.allocate(node, () -> PatternMatrix.copyOf(patterns)));
+            }
+            System.out.println("\n"+topology+" pinned threads: "+numaPool.pinnedThreads());
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() {
+            plainPool.shutdown();
+            numaPool.close();
+        }
+    }
+
+    @Benchmark
+    public double plainPool(ExecutionPlan params, Blackhole blackHole) {
+
+        List<Callable<List<BestMatches>>> tasks = new ArrayList<>();
+        for (double[][] partition : params.plainPartitions) {
+            tasks.add( () -> List.of(match(partition, params.patterns)));
+        }
+        List<BestMatches> matches = Chunks.runInOrder(params.plainPool, tasks);
+        blackHole.consume(matches);
+        return sum(matches);
+    }
+
+    @Benchmark
+    public double numaPool(ExecutionPlan params, Blackhole blackHole) {
+
+        List<Callable<BestMatches>> tasks = new ArrayList<>();
+        for (int p = 0; p < params.numaPartitions.size(); p++) {
+            double[][] partition = params.numaPartitions.get(p);
+            PatternMatrix patterns = params.numaPatterns.get(params.numaPool.node(p));
+            tasks.add( () -> match(partition, patterns));
+        }
+        List<BestMatches> matches = params.numaPool.runPartitioned(tasks);
+        blackHole.consume(matches);
+        return sum(matches);
+    }
+
+    static BestMatches match(double[][] partition, PatternMatrix patterns) {
+        BestMatches matches = new BestMatches(partition.length);
+        PatternMatcher.bestMatches(partition, 0, partition.length, patterns, matches);
+        return matches;
+    }
+
+    static double sum(List<BestMatches> matches) {
+        double val = 0;
+        for (BestMatches m : matches) val += m.sum();
+        return val;
+    }
+
+    static double[][] copy(double[][] rows) {
+        double[][] cpy = new double[rows.length][];
+        for (int i = 0; i < rows.length; i++) cpy[i] = rows[i].clone();
+        return cpy;
+    }
+}
@@ -0,0 +1,131 @@
+
+
+package ed.biodare.test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.TreeMap;
+
+/**
+ * NUMA nodes of the machine and their cpus, as listed by Linux in
+ * /sys/devices/system/node/node{N}/cpulist. Elsewhere (or without sysfs) the
+ * machine is a single node with all the available processors.
+ */
+public final class NumaTopology {
+
+    static final Path NODES_DIR = Paths.get("/sys/devices/system/node");
+
+    final List<int[]> nodes;
+    final boolean simulated;
+
+    NumaTopology(List<int[]> nodes, boolean simulated) {
+        this.nodes = nodes;
+        this.simulated = simulated;
+    }
+
+    public static NumaTopology detect() {
+
+        TreeMap<Integer, int[]> found = new TreeMap<>();
+        if (Files.isDirectory(NODES_DIR)) {
+            try (DirectoryStream<Path> dirs = Files.newDirectoryStream(NODES_DIR, "node[0-9]*")) {
+                for (Path dir : dirs) {
+                    Path list = dir.resolve("cpulist");
+                    if (!Files.exists(list)) continue;
+                    int[] cpus = parseCpuList(new String(Files.readAllBytes(list), StandardCharsets.US_ASCII));
+                    // memory only nodes have no cpus
+                    if (cpus.length > 0) found.put(Integer.parseInt(dir.getFileName().toString().substring(4)), cpus);
+                }
+            } catch (IOException | NumberFormatException e) {
+                found.clear();
+            }
+        }
+
+        if (found.isEmpty()) {
+            int[] all = new int[Runtime.getRuntime().availableProcessors()];
+            for (int i = 0; i < all.length; i++) all[i] = i;
+            return new NumaTopology(List.of(all), false);
+        }
+        return new NumaTopology(new ArrayList<>(found.values()), false);
+    }
+
+    /**
+     * The detected topology if it has the requested number of nodes (or more, then
+     * the first ones are used), otherwise the cpus of all nodes split evenly into
+     * the requested number of partitions, to try partitioned scheduling on a single socket.
+     */
+    public static NumaTopology withNodes(int count) {
+
+        if (count < 1) throw new IllegalArgumentException("Nodes count must be positive not: "+count);
+
+        NumaTopology detected = detect();
+        if (detected.size() >= count) return new NumaTopology(detected.nodes.subList(0, count), false);
+
+        int[] all = detected.nodes.stream().flatMapToInt(Arrays::stream).toArray();
+        List<int[]> split = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            // with fewer cpus than nodes, the nodes have to share them
+            split.add(all.length < count
+                    ? new int[] {all[i % all.length]}
+                    : Arrays.copyOfRange(all, i*all.length/count, (i+1)*all.length/count));
+        }
+        return new NumaTopology(split, true);
+    }
+
+    public int size() {
+        return nodes.size();
+    }
+
+    public int[] cpus(int node) {
+        return nodes.get(node).clone();
+    }
+
+    public boolean isSimulated() {
+        return simulated;
+    }
+
+    /**
+     * Parses the kernel cpu list format, e.g. "0-3,8-11,16".
+     */
+    static int[] parseCpuList(String list) {
+
+        List<Integer> cpus = new ArrayList<>();
+        for (String part : list.trim().split(",")) {
+            if (part.isEmpty()) continue;
+            int dash = part.indexOf('-');
+            if (dash < 0) {
+                cpus.add(Integer.parseInt(part));
+            } else {
+                int to = Integer.parseInt(part.substring(dash+1));
+                for (int cpu = Integer.parseInt(part.substring(0, dash)); cpu <= to; cpu++) cpus.add(cpu);
+            }
+        }
+        return cpus.stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    static String toCpuList(int[] cpus) {
+
+        StringBuilder list = new StringBuilder();
+        for (int cpu : cpus) {
+            if (list.length() > 0) list.append(',');
+            list.append(cpu);
+        }
+        return list.toString();
+    }
+
+    @Override
+    public String toString() {
+
+        StringBuilder desc = new StringBuilder(simulated ? "simulated" : "numa");
+        for (int i = 0; i < nodes.size(); i++) {
+            desc.append(" node").append(i).append(":").append(toCpuList(nodes.get(i)));
+        }
+        return desc.toString();
+    }
+}
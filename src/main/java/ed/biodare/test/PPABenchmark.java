@@ -13,14 +13,11 @@ import ed.robust.dom.data.TimeSeries;
 import ed.robust.dom.tsprocessing.PPAResult;
 import ed.robust.dom.util.Pair;
 import ed.robust.error.RobustFormatException;
-import ed.robust.util.timeseries.TSGenerator;
 import ed.robust.util.timeseries.TimeSeriesFileHandler;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
-import java.util.ArrayList;
 import java.util.List;
-import java.util.Random;
 import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 import org.openjdk.jmh.annotations.Benchmark;
@@ -63,7 +60,7 @@ public class PPABenchmark {
         
         List<TimeSeries> data;
 
-        @Setup(Level.Invocation)
+        @Setup(Level.Trial)
         public void setUp() throws RobustFormatException, IOException {
             data = readTSData(dataSize);
             //System.out.println("TS: "+data.size());
@@ -160,21 +157,6 @@ public class PPABenchmark {
     
     static List<TimeSeries> makeData(int count, int length) {
 
-        Random rnd = new Random();
-        
-        List<TimeSeries> datas = new ArrayList<>();
-        
-        for (int i=0; i< count; i++) {
-            if (rnd.nextBoolean()) {
-                double period = 20+rnd.nextInt(8);
-                TimeSeries data = TSGenerator.makeCos(length, 1, period, 5,10);
-                datas.add(TSGenerator.addNoise(data, 0.25));
-            } else {
-                TimeSeries data = (TSGenerator.makeLine(length, 1, 0.001, 1));
-                datas.add(TSGenerator.addNoise(data, 0.25));
-            }
-        }
-        
-        return datas;
+        return Datasets.series(Datasets.Shape.MIXED, count, length, Datasets.seed("ppa", count, length));
     }    
 }
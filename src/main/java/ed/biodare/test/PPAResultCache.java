@@ -0,0 +1,191 @@
+
+
+package ed.biodare.test;
+
+import ed.robust.dom.tsprocessing.PPAResult;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.io.Serializable;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.ToLongFunction;
+
+/**
+ * LRU cache of PPA results keyed by series content and analysis parameters.
+ *
+ * The in memory tier is bounded by total weight (by default every result weighs 1,
+ * i.e. an entry count). With a directory given, every result put is also written
+ * there (java serialization, one file per key), memory misses are looked up there
+ * and promoted back, so results survive eviction and restarts. Files are read and
+ * written outside of the cache lock, lookups never wait for another thread's I/O.
+ */
+public class PPAResultCache {
+
+    public static final class Key implements Serializable {
+
+        private static final long serialVersionUID = 1L;
+
+        final SeriesFingerprint series;
+        final String method;
+        final double periodMin;
+        final double periodMax;
+
+        public Key(SeriesFingerprint series, String method, double periodMin, double periodMax) {
+            this.series = series;
+            this.method = method;
+            this.periodMin = periodMin;
+            this.periodMax = periodMax;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(series, method, periodMin, periodMax);
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof Key)) return false;
+            Key other = (Key) obj;
+            return series.equals(other.series) && method.equals(other.method)
+                    && Double.compare(periodMin, other.periodMin) == 0
+                    && Double.compare(periodMax, other.periodMax) == 0;
+        }
+
+        String fileName() {
+            return method+"_"+periodMin+"_"+periodMax+"_"+series+".ser";
+        }
+    }
+
+    final long maxWeight;
+    final ToLongFunction<PPAResult> weigher;
+    final Path diskDir;
+    final LinkedHashMap<Key, PPAResult> memory = new LinkedHashMap<>(256, 0.75f, true);
+
+    long weight;
+    long hits;
+    long diskHits;
+    long misses;
+
+    public PPAResultCache(long maxEntries) {
+        this(maxEntries, r -> 1, null);
+    }
+
+    public PPAResultCache(long maxWeight, ToLongFunction<PPAResult> weigher, Path diskDir) {
+        if (maxWeight < 0) throw new IllegalArgumentException("Max weight cannot be negative: "+maxWeight);
+        this.maxWeight = maxWeight;
+        this.weigher = weigher;
+        this.diskDir = diskDir;
+        if (diskDir != null) {
+            if (!Serializable.class.isAssignableFrom(PPAResult.class)) {
+                throw new IllegalArgumentException("PPAResult is not Serializable, cannot cache on disk");
+            }
+            try {
+                Files.createDirectories(diskDir);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Cannot create cache dir: "+diskDir, e);
+            }
+        }
+    }
+
+    public PPAResult get(Key key) {
+
+        synchronized (this) {
+            PPAResult result = memory.get(key);
+            if (result != null) {
+                hits++;
+                return result;
+            }
+        }
+
+        PPAResult result = readDisk(key);
+        synchronized (this) {
+            if (result == null) {
+                misses++;
+                return null;
+            }
+            diskHits++;
+            putMemory(key, result);
+            return result;
+        }
+    }
+
+    public void put(Key key, PPAResult result) {
+        synchronized (this) {
+            putMemory(key, result);
+        }
+        writeDisk(key, result);
+    }
+
+    public synchronized long hits() {
+        return hits;
+    }
+
+    public synchronized long diskHits() {
+        return diskHits;
+    }
+
+    public synchronized long misses() {
+        return misses;
+    }
+
+    public synchronized long size() {
+        return memory.size();
+    }
+
+    void putMemory(Key key, PPAResult result) {
+
+        PPAResult prev = memory.put(key, result);
+        if (prev != null) weight -= weigher.applyAsLong(prev);
+        weight += weigher.applyAsLong(result);
+
+        Iterator<Map.Entry<Key, PPAResult>> it = memory.entrySet().iterator();
+        while (weight > maxWeight && it.hasNext()) {
+            Map.Entry<Key, PPAResult> eldest = it.next();
+            weight -= weigher.applyAsLong(eldest.getValue());
+            it.remove();
+        }
+    }
+
+    PPAResult readDisk(Key key) {
+
+        if (diskDir == null) return null;
+        Path file = diskDir.resolve(key.fileName());
+        if (!Files.exists(file)) return null;
+
+        try (InputStream in = Files.newInputStream(file);
+                ObjectInputStream objects = new ObjectInputStream(in)) {
+            return (PPAResult) objects.readObject();
+        } catch (IOException | ClassNotFoundException | ClassCastException e) {
+            // stale or corrupted entry, recompute
+            return null;
+        }
+    }
+
+    void writeDisk(Key key, PPAResult result) {
+
+        if (diskDir == null) return;
+
+        Path file = diskDir.resolve(key.fileName());
+        // same key means same content, an entry read from disk need not be written again
+        if (Files.exists(file)) return;
+        try {
+            Path tmp = Files.createTempFile(diskDir, "ppa", ".tmp");
+            try (OutputStream out = Files.newOutputStream(tmp);
+                    ObjectOutputStream objects = new ObjectOutputStream(out)) {
+                objects.writeObject(result);
+            }
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot spill result to: "+file, e);
+        }
+    }
+}
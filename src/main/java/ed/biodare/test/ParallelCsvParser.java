@@ -0,0 +1,409 @@
+
+
+package ed.biodare.test;
+
+import ed.robust.dom.data.TimeSeries;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Parallel parser of the column layout csv exports read by
+ * TimeSeriesFileHandler.readFromText: header rows, then lines of
+ * time,value,value... with one series per column. Empty cells are missing points.
+ *
+ * The file is memory mapped and split on line boundaries into segments. Each
+ * segment is tokenized on the pool straight from the bytes into its own row
+ * buffer, then the buffers are transposed in file order into the series columns,
+ * also on the pool. Cells are parsed without making Strings, plain decimals with
+ * up to 15 significant digits exactly (correctly rounded, as Double.parseDouble),
+ * anything else falls back to Double.parseDouble.
+ *
+ * Segments are mapped separately and are at most 1GB, so files can be larger
+ * than a single mapping.
+ */
+public class ParallelCsvParser {
+
+    static final long MAX_SEGMENT_BYTES = 1L << 30;
+    static final int SCAN_BYTES = 8*1024;
+    static final int BLOCK = 8;
+
+    static final double[] POW10 = {
+        1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+        1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+
+    final ExecutorService pool;
+    final int segments;
+
+    /**
+     * @param pool pool running the segments, not shut down here
+     * @param segments number of segments to split the data into, e.g. the pool threads
+     */
+    public ParallelCsvParser(ExecutorService pool, int segments) {
+        if (segments < 1) throw new IllegalArgumentException("Segments must be positive not: "+segments);
+        this.pool = pool;
+        this.segments = segments;
+    }
+
+    /**
+     * Times and the values of every series, NaN where a point is missing.
+     */
+    public static final class Columns {
+
+        public final double[] times;
+        /** values[series][row] */
+        public final double[][] values;
+
+        Columns(double[] times, double[][] values) {
+            this.times = times;
+            this.values = values;
+        }
+
+        public int size() {
+            return values.length;
+        }
+
+        /**
+         * The series without its missing points.
+         */
+        public TimeSeries timeSeries(int series) {
+
+            double[] column = values[series];
+            double[] t = new double[times.length];
+            double[] v = new double[times.length];
+            int size = 0;
+            for (int i = 0; i < column.length; i++) {
+                if (Double.isNaN(column[i])) continue;
+                t[size] = times[i];
+                v[size] = column[i];
+                size++;
+            }
+            return size == times.length ? new TimeSeries(t, v) : new TimeSeries(Arrays.copyOf(t, size), Arrays.copyOf(v, size));
+        }
+    }
+
+    public Columns parseColumns(Path file, char sep, int headerRows) throws IOException {
+
+        if (sep > 127) throw new IllegalArgumentException("Separator must be a single byte not: "+sep);
+        byte separator = (byte) sep;
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+
+            long dataStart = 0;
+            for (int i = 0; i < headerRows; i++) {
+                dataStart = nextLine(channel, dataStart);
+            }
+            int columns = columns(channel, dataStart, separator);
+            if (columns < 0) return new Columns(new double[0], new double[0][]);
+
+            long[] bounds = segmentBounds(channel, dataStart, size);
+            List<Callable<List<Segment>>> tasks = new ArrayList<>(bounds.length-1);
+            for (int i = 0; i < bounds.length-1; i++) {
+                final long from = bounds[i];
+                final long to = bounds[i+1];
+                tasks.add( () -> List.of(Segment.parse(channel, from, to, columns, separator)));
+            }
+            return merge(Chunks.runInOrder(pool, tasks), columns);
+        }
+    }
+
+    /**
+     * Parses the file and builds the series on the pool.
+     */
+    public List<TimeSeries> parseTimeSeries(Path file, char sep, int headerRows) throws IOException {
+
+        Columns columns = parseColumns(file, sep, headerRows);
+        int chunk = Math.max(1, (columns.size()+segments-1) / segments);
+
+        List<Callable<List<TimeSeries>>> tasks = new ArrayList<>();
+        for (int ix = 0; ix < columns.size(); ix+=chunk) {
+            final int start = ix;
+            final int end = Math.min(ix+chunk, columns.size());
+            tasks.add( () -> {
+                List<TimeSeries> series = new ArrayList<>(end-start);
+                for (int i = start; i < end; i++) series.add(columns.timeSeries(i));
+                return series;
+            });
+        }
+        return Chunks.runInOrder(pool, tasks);
+    }
+
+    /**
+     * Segment starts ending with the file size, every start is at the beginning of
+     * a line so no line is split between segments.
+     */
+    long[] segmentBounds(FileChannel channel, long dataStart, long size) throws IOException {
+
+        long bytes = size - dataStart;
+        int count = (int) Math.max(segments, (bytes+MAX_SEGMENT_BYTES-1) / MAX_SEGMENT_BYTES);
+
+        List<Long> bounds = new ArrayList<>(count+1);
+        bounds.add(dataStart);
+        for (int i = 1; i < count; i++) {
+            long target = dataStart + bytes*i/count;
+            long start = nextLine(channel, Math.max(target-1, bounds.get(bounds.size()-1)));
+            if (start > bounds.get(bounds.size()-1) && start < size) bounds.add(start);
+        }
+        bounds.add(size);
+
+        long[] result = new long[bounds.size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = bounds.get(i);
+            if (i > 0 && result[i]-result[i-1] > Integer.MAX_VALUE) throw new IOException("Line too long to map at byte "+result[i-1]);
+        }
+        return result;
+    }
+
+    /**
+     * @return position just after the end of the line containing from, or the file size
+     */
+    static long nextLine(FileChannel channel, long from) throws IOException {
+
+        ByteBuffer buffer = ByteBuffer.allocate(SCAN_BYTES);
+        long pos = from;
+        while (true) {
+            buffer.clear();
+            int read = channel.read(buffer, pos);
+            if (read <= 0) return channel.size();
+            for (int i = 0; i < read; i++) {
+                if (buffer.get(i) == '\n') return pos+i+1;
+            }
+            pos += read;
+        }
+    }
+
+    /**
+     * Series in the first non blank data line, its cells less the time, or -1 if there is no data.
+     */
+    static int columns(FileChannel channel, long dataStart, byte sep) throws IOException {
+
+        long size = channel.size();
+        long start = dataStart;
+        while (start < size) {
+            long end = nextLine(channel, start);
+            if (end - start > Integer.MAX_VALUE) throw new IOException("Line too long to map at byte "+start);
+            MappedByteBuffer line = channel.map(FileChannel.MapMode.READ_ONLY, start, end-start);
+
+            int separators = 0;
+            boolean blank = true;
+            for (int i = 0; i < line.limit(); i++) {
+                byte b = line.get(i);
+                if (b == sep) separators++;
+                else if (b != '\n' && !isSpace(b)) blank = false;
+            }
+            if (!blank || separators > 0) return separators;
+            start = end;
+        }
+        return -1;
+    }
+
+    Columns merge(List<Segment> parts, int columns) {
+
+        int rows = 0;
+        for (Segment part : parts) rows += part.rows;
+
+        double[] times = new double[rows];
+        int offset = 0;
+        for (Segment part : parts) {
+            System.arraycopy(part.times, 0, times, offset, part.rows);
+            offset += part.rows;
+        }
+
+        double[][] values = new double[columns][];
+        // whole blocks of columns per task, each block reads a cache line of every row
+        int chunk = Math.max(BLOCK, (columns+segments-1) / segments / BLOCK * BLOCK);
+        final int total = rows;
+        List<Callable<List<Void>>> tasks = new ArrayList<>();
+        for (int ix = 0; ix < columns; ix+=chunk) {
+            final int start = ix;
+            final int end = Math.min(ix+chunk, columns);
+            tasks.add( () -> {
+                for (int block = start; block < end; block+=BLOCK) {
+                    int blockEnd = Math.min(block+BLOCK, end);
+                    for (int c = block; c < blockEnd; c++) values[c] = new double[total];
+                    int pos = 0;
+                    for (Segment part : parts) {
+                        for (int r = 0; r < part.rows; r++) {
+                            int row = r*columns;
+                            for (int c = block; c < blockEnd; c++) values[c][pos+r] = part.cells[row+c];
+                        }
+                        pos += part.rows;
+                    }
+                }
+                return List.of();
+            });
+        }
+        Chunks.runInOrder(pool, tasks);
+        return new Columns(times, values);
+    }
+
+    /**
+     * Parsed lines of one segment, the values row by row so the tokenizer writes
+     * sequentially, they are transposed into the columns when merged.
+     */
+    static final class Segment {
+
+        final int columns;
+        double[] times;
+        double[] cells;
+        int rows;
+
+        Segment(int columns, int capacity) throws IOException {
+            this.columns = columns;
+            this.times = new double[capacity];
+            this.cells = new double[cellsCapacity(capacity)];
+        }
+
+        static Segment parse(FileChannel channel, long from, long to, int columns, byte sep) throws IOException {
+
+            MappedByteBuffer bytes = channel.map(FileChannel.MapMode.READ_ONLY, from, to-from);
+            int limit = bytes.limit();
+
+            // about the length of the first line per row
+            int lineBytes = 1;
+            while (lineBytes < limit && bytes.get(lineBytes-1) != '\n') lineBytes++;
+            Segment segment = new Segment(columns, limit/lineBytes + 16);
+
+            int cell = 0;
+            int cellStart = 0;
+            for (int i = 0; i <= limit; i++) {
+                byte b = i < limit ? bytes.get(i) : (byte) '\n';
+                if (b != sep && b != '\n') continue;
+
+                int start = cellStart;
+                int end = i;
+                while (start < end && isSpace(bytes.get(start))) start++;
+                while (end > start && isSpace(bytes.get(end-1))) end--;
+                cellStart = i+1;
+
+                if (cell == 0) {
+                    // blank line
+                    if (b == '\n' && start == end) continue;
+                    if (start == end) throw new IOException("Missing time at byte "+(from+start));
+                    segment.ensureCapacity();
+                    segment.times[segment.rows] = parseDouble(bytes, start, end, from);
+                } else if (cell <= columns) {
+                    segment.cells[segment.rows*columns+cell-1] = start == end ? Double.NaN : parseDouble(bytes, start, end, from);
+                } else {
+                    throw new IOException("Line at byte "+(from+start)+" has more than "+columns+" series");
+                }
+                cell++;
+
+                if (b == '\n') {
+                    int row = segment.rows*columns;
+                    for (int c = cell-1; c < columns; c++) segment.cells[row+c] = Double.NaN;
+                    segment.rows++;
+                    cell = 0;
+                }
+            }
+            return segment;
+        }
+
+        void ensureCapacity() throws IOException {
+            if (rows < times.length) return;
+            int capacity = times.length + times.length/2 + 16;
+            cells = Arrays.copyOf(cells, cellsCapacity(capacity));
+            times = Arrays.copyOf(times, capacity);
+        }
+
+        int cellsCapacity(int rows) throws IOException {
+            long cells = (long) rows*columns;
+            if (cells > Integer.MAX_VALUE - 8) throw new IOException("Too many cells in a segment, use more segments: "+cells);
+            return (int) cells;
+        }
+    }
+
+    static boolean isSpace(byte b) {
+        return b == ' ' || b == '\t' || b == '\r';
+    }
+
+    /**
+     * Parses the cell in [start, end) of the buffer. Decimals with at most 15
+     * significant digits and a power of ten up to 22 are exact in doubles, so a
+     * single multiplication or division is correctly rounded; the rest goes
+     * through Double.parseDouble.
+     *
+     * @param offset file position of the buffer, for the error message
+     */
+    static double parseDouble(ByteBuffer bytes, int start, int end, long offset) throws IOException {
+
+        int i = start;
+        boolean negative = false;
+        byte b = bytes.get(i);
+        if (b == '-' || b == '+') {
+            negative = b == '-';
+            i++;
+        }
+
+        long mantissa = 0;
+        int digits = 0;
+        int exponent = 0;
+        boolean any = false;
+        for (; i < end; i++) {
+            b = bytes.get(i);
+            if (b < '0' || b > '9') break;
+            mantissa = mantissa*10 + (b - '0');
+            if (mantissa != 0) digits++;
+            any = true;
+        }
+        if (i < end && bytes.get(i) == '.') {
+            for (i++; i < end; i++) {
+                b = bytes.get(i);
+                if (b < '0' || b > '9') break;
+                mantissa = mantissa*10 + (b - '0');
+                if (mantissa != 0) digits++;
+                exponent--;
+                any = true;
+                if (digits > 15) break;
+            }
+        }
+        if (any && i < end && digits <= 15 && (bytes.get(i) == 'e' || bytes.get(i) == 'E')) {
+            i++;
+            boolean negativeExp = false;
+            if (i < end && (bytes.get(i) == '-' || bytes.get(i) == '+')) {
+                negativeExp = bytes.get(i) == '-';
+                i++;
+            }
+            int exp = 0;
+            int expDigits = 0;
+            for (; i < end && expDigits < 4; i++, expDigits++) {
+                b = bytes.get(i);
+                if (b < '0' || b > '9') break;
+                exp = exp*10 + (b - '0');
+            }
+            if (expDigits == 0) any = false;
+            exponent += negativeExp ? -exp : exp;
+        }
+
+        if (any && i == end && digits <= 15) {
+            double value = mantissa;
+            if (exponent == 0 || mantissa == 0) return negative ? -value : value;
+            if (exponent > 0 && exponent <= 22) return negative ? -value*POW10[exponent] : value*POW10[exponent];
+            if (exponent < 0 && exponent >= -22) return negative ? -value/POW10[-exponent] : value/POW10[-exponent];
+        }
+        return parseSlow(bytes, start, end, offset);
+    }
+
+    static double parseSlow(ByteBuffer bytes, int start, int end, long offset) throws IOException {
+
+        byte[] cell = new byte[end-start];
+        for (int i = 0; i < cell.length; i++) cell[i] = bytes.get(start+i);
+        String text = new String(cell, StandardCharsets.ISO_8859_1);
+        try {
+            return Double.parseDouble(text);
+        } catch (NumberFormatException e) {
+            throw new IOException("Not a number at byte "+(offset+start)+": "+text, e);
+        }
+    }
+}
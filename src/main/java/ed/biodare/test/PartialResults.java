@@ -0,0 +1,70 @@
+
+
+package ed.biodare.test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Results of a job which may have been stopped before all its items were analysed.
+ * Results stay at the index of their input item, the missing ones are null.
+ */
+public final class PartialResults<R> {
+
+    public enum Status {
+        COMPLETE,
+        CANCELLED,
+        EXPIRED
+    }
+
+    final List<R> results;
+    final int completed;
+    final Status status;
+
+    PartialResults(List<R> results, int completed, Status status) {
+        this.results = Collections.unmodifiableList(results);
+        this.completed = completed;
+        this.status = status;
+    }
+
+    public Status status() {
+        return status;
+    }
+
+    public boolean isComplete() {
+        return status == Status.COMPLETE;
+    }
+
+    public int size() {
+        return results.size();
+    }
+
+    public int completed() {
+        return completed;
+    }
+
+    public boolean isDone(int item) {
+        return results.get(item) != null;
+    }
+
+    public R get(int item) {
+        return results.get(item);
+    }
+
+    /**
+     * All results by input index, null for the items not analysed.
+     */
+    public List<R> results() {
+        return results;
+    }
+
+    public List<R> completedResults() {
+
+        List<R> done = new ArrayList<>(completed);
+        for (R r : results) {
+            if (r != null) done.add(r);
+        }
+        return done;
+    }
+}
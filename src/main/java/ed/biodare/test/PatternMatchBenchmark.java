@@ -0,0 +1,73 @@
+
+
+package ed.biodare.test;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.apache.commons.math3.util.Pair;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Single threaded stream matching of SmallTablesBenchmark against the packed primitive kernel.
+ * Run with -prof gc, gc.alloc.rate.norm of primitiveMatch should be ~0 B/op.
+ */
+@Fork(1)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class PatternMatchBenchmark {
+
+
+
+    @State(Scope.Thread)
+    public static class ExecutionPlan {
+
+        int dataSize = 250;
+        int patternSize = 80;
+        int length = 50;
+
+        Map<Pair<Integer, Integer>, double[]> patterns;
+        PatternMatrix patternMatrix;
+        double[][] data;
+        BestMatches matches;
+
+        final SmallTablesBenchmark tables = new SmallTablesBenchmark();
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            patterns = SmallTablesBenchmark.makePatterns(patternSize, length);
+            patternMatrix = PatternMatrix.of(patterns);
+            data = SmallTablesBenchmark.makeData(dataSize, length);
+            matches = new BestMatches(dataSize);
+        }
+    }
+
+    @Benchmark
+    public List<Pair<Pair<Integer,Integer>,Double>> streamMatch(ExecutionPlan params, Blackhole blackHole) {
+
+        List<Pair<Pair<Integer,Integer>,Double>> results = params.tables.calculate(params.data, 0, params.dataSize, params.patterns, false);
+        blackHole.consume(results);
+        return results;
+    }
+
+    @Benchmark
+    public BestMatches primitiveMatch(ExecutionPlan params, Blackhole blackHole) {
+
+        PatternMatcher.bestMatches(params.data, 0, params.dataSize, params.patternMatrix, params.matches);
+        blackHole.consume(params.matches);
+        return params.matches;
+    }
+}
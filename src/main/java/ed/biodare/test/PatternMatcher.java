@@ -0,0 +1,68 @@
+
+
+package ed.biodare.test;
+
+/**
+ * Allocation free version of the SmallTablesBenchmark matching: a straight
+ * loop over the packed pattern matrix with a primitive max reduction.
+ * It computes the same values as the non memalloc convolute.
+ */
+public final class PatternMatcher {
+
+    private PatternMatcher() {}
+
+    public static void bestMatches(double[][] datas, int startIx, int endIx, PatternMatrix patterns, BestMatches out) {
+
+        for (int i = startIx; i < endIx; i++) {
+            double[] data = datas[i];
+
+            int best = -1;
+            double bestVal = Double.NEGATIVE_INFINITY;
+            for (int p = 0; p < patterns.size; p++) {
+                double val = convolute(data, patterns.values, p*patterns.length);
+                if (best < 0 || val > bestVal) {
+                    best = p;
+                    bestVal = val;
+                }
+            }
+            out.pattern[i] = best;
+            out.value[i] = bestVal;
+        }
+    }
+
+    /**
+     * Same matching over cosine transformed rows and patterns taken from the cache,
+     * so the inner loop is a plain dot product.
+     */
+    public static void bestMatchesCosines(double[][] datas, int startIx, int endIx, PatternMatrix patterns, CosineCache cache, BestMatches out) {
+
+        double[] cosPatterns = cache.cosines(patterns.values);
+        for (int i = startIx; i < endIx; i++) {
+            double[] cosData = cache.cosines(datas[i]);
+
+            int best = -1;
+            double bestVal = Double.NEGATIVE_INFINITY;
+            for (int p = 0; p < patterns.size; p++) {
+                // forward and reversed pass of convolute sum the same products
+                double val = 2 * DotProducts.dot(cosData, 0, cosPatterns, p*patterns.length, patterns.length);
+                if (best < 0 || val > bestVal) {
+                    best = p;
+                    bestVal = val;
+                }
+            }
+            out.pattern[i] = best;
+            out.value[i] = bestVal;
+        }
+    }
+
+    static double convolute(double[] data, double[] patterns, int offset) {
+
+        double val = 0;
+        int last = data.length-1;
+        for (int i = 0; i < data.length; i++) {
+            val += Math.cos(data[i]) * Math.cos(patterns[offset+i]);
+            val += Math.cos(data[last-i]) * Math.cos(patterns[offset+last-i]);
+        }
+        return val;
+    }
+}
@@ -0,0 +1,77 @@
+
+
+package ed.biodare.test;
+
+import java.util.Map;
+import org.apache.commons.math3.util.Pair;
+
+/**
+ * Patterns packed into one contiguous row major matrix, with their keys kept
+ * in a parallel int index (two ints per pattern), so matching can run over
+ * primitives only.
+ */
+public final class PatternMatrix {
+
+    final int size;
+    final int length;
+    final double[] values;
+    final int[] keys;
+
+    PatternMatrix(int size, int length) {
+        this.size = size;
+        this.length = length;
+        this.values = new double[size*length];
+        this.keys = new int[2*size];
+    }
+
+    /**
+     * Packs patterns in the map iteration order, so ties are resolved the same
+     * way as when streaming over the map entries.
+     */
+    public static PatternMatrix of(Map<Pair<Integer, Integer>, double[]> patterns) {
+
+        if (patterns.isEmpty()) throw new IllegalArgumentException("No patterns to pack");
+
+        int length = patterns.values().iterator().next().length;
+        PatternMatrix matrix = new PatternMatrix(patterns.size(), length);
+
+        int ix = 0;
+        for (Map.Entry<Pair<Integer, Integer>, double[]> e : patterns.entrySet()) {
+            if (e.getValue().length != length) {
+                throw new IllegalArgumentException("Pattern "+e.getKey()+" length "+e.getValue().length+"!="+length);
+            }
+            System.arraycopy(e.getValue(), 0, matrix.values, ix*length, length);
+            matrix.keys[2*ix] = e.getKey().getFirst();
+            matrix.keys[2*ix+1] = e.getKey().getSecond();
+            ix++;
+        }
+        return matrix;
+    }
+
+    /**
+     * Deep copy, allocated by the calling thread.
+     */
+    public static PatternMatrix copyOf(PatternMatrix other) {
+
+        PatternMatrix matrix = new PatternMatrix(other.size, other.length);
+        System.arraycopy(other.values, 0, matrix.values, 0, other.values.length);
+        System.arraycopy(other.keys, 0, matrix.keys, 0, other.keys.length);
+        return matrix;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int length() {
+        return length;
+    }
+
+    public int keyFirst(int pattern) {
+        return keys[2*pattern];
+    }
+
+    public int keySecond(int pattern) {
+        return keys[2*pattern+1];
+    }
+}
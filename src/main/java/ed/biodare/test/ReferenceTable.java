@@ -0,0 +1,89 @@
+
+
+package ed.biodare.test;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Immutable values and ranks of reference waveforms sampled at a zts grid,
+ * stored as one contiguous row per reference. Safe to share between threads.
+ */
+public final class ReferenceTable {
+
+    final List<JTKReference> references;
+    final double[] zts;
+    final double[] values;
+    final double[] ranks;
+
+    ReferenceTable(List<JTKReference> references, double[] zts) {
+        this.references = List.copyOf(references);
+        this.zts = zts.clone();
+
+        int n = zts.length;
+        this.values = new double[references.size()*n];
+        this.ranks = new double[values.length];
+        double[] row = new double[n];
+        for (int p = 0; p < references.size(); p++) {
+            JTKReference ref = references.get(p);
+            for (int i = 0; i < n; i++) row[i] = ref.level(zts[i]) / JTKReference.QUANTUM;
+            System.arraycopy(row, 0, values, p*n, n);
+            rank(row, ranks, p*n);
+        }
+    }
+
+    public int size() {
+        return references.size();
+    }
+
+    public int length() {
+        return zts.length;
+    }
+
+    public JTKReference reference(int ref) {
+        return references.get(ref);
+    }
+
+    public double value(int ref, int point) {
+        return values[ref*zts.length+point];
+    }
+
+    public double rank(int ref, int point) {
+        return ranks[ref*zts.length+point];
+    }
+
+    public void copyRanks(int ref, double[] dst) {
+        System.arraycopy(ranks, ref*zts.length, dst, 0, zts.length);
+    }
+
+    public double[] zts() {
+        return zts.clone();
+    }
+
+    /**
+     * Bytes held by the table arrays.
+     */
+    public long bytes() {
+        return 8L*(zts.length + values.length + ranks.length);
+    }
+
+    /**
+     * 1 based ranks, ties get the average of their ranks.
+     */
+    static void rank(double[] row, double[] out, int offset) {
+
+        int n = row.length;
+        Integer[] order = new Integer[n];
+        for (int i = 0; i < n; i++) order[i] = i;
+        Arrays.sort(order, (a, b) -> Double.compare(row[a], row[b]));
+
+        int i = 0;
+        while (i < n) {
+            int j = i;
+            while (j+1 < n && row[order[j+1]] == row[order[i]]) j++;
+            double rank = (i + j) / 2.0 + 1;
+            for (int k = i; k <= j; k++) out[offset+order[k]] = rank;
+            i = j+1;
+        }
+    }
+}
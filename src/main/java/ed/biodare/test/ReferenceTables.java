@@ -0,0 +1,87 @@
+
+
+package ed.biodare.test;
+
+import ed.biodare.rhythm.ejtk.JTKPatterns;
+import ed.biodare.rhythm.ejtk.patterns.JTKPattern;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Process wide cache of reference tables keyed by the zts grid content and the
+ * reference set. Tables are built on first use and then shared read only by all
+ * threads. Only the tau recomputation of IncrementalJTK reads them, the eJTK
+ * analysers take patterns.
+ *
+ * Also keeps a single eJTK classic pattern list, which is otherwise rebuilt on
+ * every JTKPatterns.eJTKClassic() call; this memo is what the JTK analyses share
+ * (see ReferenceTablesBenchmark).
+ *
+ * The cache is not bounded, every distinct grid stays until clear() is called.
+ * Benchmarks over a few fixed grids can ignore it, callers meeting arbitrary
+ * grids (e.g. one per uploaded dataset) must clear it themselves.
+ */
+public final class ReferenceTables {
+
+    static final Map<Key, ReferenceTable> TABLES = new ConcurrentHashMap<>();
+
+    private ReferenceTables() {}
+
+    public static ReferenceTable get(double[] zts, List<JTKReference> references) {
+
+        ReferenceTable table = TABLES.get(new Key(zts, references));
+        if (table != null) return table;
+
+        // the stored key keeps its own copies, the caller may reuse its arrays
+        return TABLES.computeIfAbsent(new Key(zts.clone(), List.copyOf(references)), k -> new ReferenceTable(k.references, k.zts));
+    }
+
+    public static ReferenceTable classic(double[] zts) {
+        return get(zts, ClassicHolder.REFERENCES);
+    }
+
+    public static List<JTKPattern> eJTKClassic() {
+        return ClassicHolder.PATTERNS;
+    }
+
+    public static int size() {
+        return TABLES.size();
+    }
+
+    public static void clear() {
+        TABLES.clear();
+    }
+
+    static final class ClassicHolder {
+        static final List<JTKReference> REFERENCES = List.copyOf(JTKReference.classic());
+        static final List<JTKPattern> PATTERNS = Collections.unmodifiableList(JTKPatterns.eJTKClassic());
+    }
+
+    static final class Key {
+
+        final double[] zts;
+        final List<JTKReference> references;
+        final int hash;
+
+        Key(double[] zts, List<JTKReference> references) {
+            this.zts = zts;
+            this.references = references;
+            this.hash = 31*Arrays.hashCode(zts) + references.hashCode();
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof Key)) return false;
+            Key other = (Key) obj;
+            return Arrays.equals(zts, other.zts) && references.equals(other.references);
+        }
+    }
+}
@@ -0,0 +1,108 @@
+
+
+package ed.biodare.test;
+
+import ed.biodare.rhythm.ejtk.BD2JTK;
+import ed.biodare.rhythm.ejtk.BD2eJTKRes;
+import ed.biodare.rhythm.ejtk.JTKPatterns;
+import ed.biodare.rhythm.ejtk.patterns.JTKPattern;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * A JTK request on the shared pool with the eJTK classic patterns built for the
+ * request, against the patterns memoised by ReferenceTables.
+ *
+ * The bytes allocated building the patterns are counted in the patternBytes aux
+ * counter (divide by requests for the bytes per request the memo saves), the
+ * whole allocation per request comes with -prof gc.
+ */
+@Fork(1)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class ReferenceTablesBenchmark {
+
+
+
+    @State(Scope.Benchmark)
+    public static class ExecutionPlan {
+
+        @Param({ "50", "192" })
+        public int length;
+
+        @Param({ "4" })
+        public int threads;
+
+        public int seriesPerRequest = 64;
+        public int chunkSize = 16;
+
+        double[][] data;
+        double[] zts;
+
+        ExecutorService pool;
+        SharedJTKAnalyser jtk;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            data = EJTKBenchmark.makeData(seriesPerRequest, length);
+            zts = EJTKBenchmark.makeTimes(0, length, 1);
+            pool = AnalysisExecutors.newPool(AnalysisExecutors.Kind.FIXED, threads);
+            jtk = new SharedJTKAnalyser(pool, () -> new BD2JTK(1));
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() {
+            pool.shutdown();
+        }
+    }
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class PatternCounters {
+
+        public long patternBytes;
+        public long requests;
+    }
+
+    @Benchmark
+    public List<BD2eJTKRes> perRequest(ExecutionPlan params, PatternCounters counters, Blackhole blackHole) {
+
+        long before = Instrumented.allocatedBytes();
+        List<JTKPattern> patterns = JTKPatterns.eJTKClassic();
+        if (before >= 0) counters.patternBytes += Instrumented.allocatedBytes() - before;
+
+        return request(patterns, params, counters, blackHole);
+    }
+
+    @Benchmark
+    public List<BD2eJTKRes> shared(ExecutionPlan params, PatternCounters counters, Blackhole blackHole) {
+
+        return request(ReferenceTables.eJTKClassic(), params, counters, blackHole);
+    }
+
+    List<BD2eJTKRes> request(List<JTKPattern> patterns, ExecutionPlan params, PatternCounters counters, Blackhole blackHole) {
+
+        List<BD2eJTKRes> results = params.jtk.analyseData(params.data, params.zts, patterns, params.chunkSize);
+        counters.requests++;
+        blackHole.consume(results);
+        return results;
+    }
+}
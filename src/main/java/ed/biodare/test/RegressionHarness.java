@@ -0,0 +1,422 @@
+
+
+package ed.biodare.test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import org.apache.commons.math3.distribution.TDistribution;
+import org.apache.commons.math3.stat.inference.MannWhitneyUTest;
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Tracks the benchmarks across upgrades of the analysis libraries.
+ *
+ * Every run stores the JMH json results under results/label/timestamp.json,
+ * where the label defaults to the versions of eJTK and of the period analysers
+ * found on the classpath (e.g. ejtk-2.2.5-SNAPSHOT_period-1.6.0-SNAPSHOT),
+ * together with a .properties file describing the versions and the machine.
+ * Snapshots keep their version when rebuilt, so give such runs an explicit
+ * label (e.g. with the commit of the library).
+ *
+ * A comparison pools the iteration scores of all the baseline runs and takes
+ * the latest candidate run. For every benchmark and parameter combination it
+ * reports the change of the mean score with its 95% confidence interval (Welch)
+ * and the Mann-Whitney U test p-value. A benchmark regresses when it got worse
+ * by more than the threshold with p below 0.05; then the report lists it and
+ * the harness exits with 1, so it can gate a build.
+ *
+ * java -cp target/benchmarks.jar ed.biodare.test.RegressionHarness run [include regex] [label] [baseline label] [threshold]
+ * java -cp target/benchmarks.jar ed.biodare.test.RegressionHarness compare baseline-label candidate-label [threshold]
+ * java -cp target/benchmarks.jar ed.biodare.test.RegressionHarness versions
+ * e.g. run "\.(SharedPoolBenchmark|EJTKBenchmark)\." "" ejtk-2.2.4_period-1.5.0 0.05
+ *
+ * The include regex is matched anywhere in the full benchmark names, so anchor
+ * the class names; a run which matches no enabled benchmark fails.
+ *
+ * The results directory can be changed with -Dbiodare.results.dir
+ */
+public class RegressionHarness {
+
+    static final double DEFAULT_THRESHOLD = 0.05;
+    static final double ALPHA = 0.05;
+
+    static final String[][] DEPENDENCIES = {
+        {"ed.biodare.rhythm", "eJTK"},
+        {"ed.biodare.period", "FFT-NLLS"},
+        {"ed.biodare.period", "MESA"},
+        {"ed.biodare.period", "MFourFit"},
+        {"ed.biodare.period", "EPR"},
+        {"ed.biodare.period", "LSPR"},
+        {"ed.biodare.period", "SpectRes"}
+    };
+
+    /** enabled benchmarks covering both eJTK and the period analysers */
+    static final String DEFAULT_INCLUDE = "\\.(SharedPoolBenchmark|EJTKBenchmark)\\.";
+
+    enum Verdict { REGRESSION, IMPROVEMENT, NO_CHANGE, TOO_FEW_SAMPLES, ADDED, REMOVED }
+
+    public static void main(String[] args) throws RunnerException, IOException {
+
+        Path root = Paths.get(System.getProperty("biodare.results.dir", "results"));
+        String command = args.length > 0 ? args[0] : "run";
+
+        switch (command) {
+            case "run": {
+                String include = args.length > 1 ? args[1] : DEFAULT_INCLUDE;
+                String label = args.length > 2 && !args[2].isEmpty() ? args[2] : label(dependencyVersions());
+                Path file = run(include, root.resolve(label));
+                System.out.println("Results stored in: "+file.toAbsolutePath());
+                if (args.length > 3) {
+                    double threshold = args.length > 4 ? Double.parseDouble(args[4]) : DEFAULT_THRESHOLD;
+                    exitOnRegression(compare(root, args[3], label, file, threshold));
+                }
+                break;
+            }
+            case "compare": {
+                if (args.length < 3) throw new IllegalArgumentException("compare needs the baseline and candidate labels");
+                double threshold = args.length > 3 ? Double.parseDouble(args[3]) : DEFAULT_THRESHOLD;
+                List<Path> candidates = runs(root.resolve(args[2]));
+                if (candidates.isEmpty()) throw new IllegalArgumentException("No runs stored for: "+args[2]);
+                exitOnRegression(compare(root, args[1], args[2], candidates.get(candidates.size()-1), threshold));
+                break;
+            }
+            case "versions":
+                dependencyVersions().forEach((artifact, version) -> System.out.println(artifact+" "+version));
+                System.out.println("label "+label(dependencyVersions()));
+                break;
+            default: throw new IllegalArgumentException("Unknown command, use run, compare or versions not: "+command);
+        }
+    }
+
+    static void exitOnRegression(List<Comparison> comparisons) {
+        if (comparisons.stream().anyMatch(c -> c.verdict == Verdict.REGRESSION)) System.exit(1);
+    }
+
+    static Path run(String include, Path dir) throws RunnerException, IOException {
+
+        Files.createDirectories(dir);
+        String stamp = DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss").format(LocalDateTime.now());
+        Path file = dir.resolve(stamp+".json");
+
+        Collection<RunResult> results = new Runner(new OptionsBuilder()
+                .include(include)
+                .resultFormat(ResultFormatType.JSON)
+                .result(file.toString())
+                .build()).run();
+        if (results.isEmpty()) {
+            Files.deleteIfExists(file);
+            throw new IllegalArgumentException("No benchmarks run for include: "+include);
+        }
+        writeEnvironment(dir.resolve(stamp+".properties"));
+        return file;
+    }
+
+    static void writeEnvironment(Path file) throws IOException {
+
+        Properties env = new Properties();
+        dependencyVersions().forEach(env::setProperty);
+        env.setProperty("java.version", System.getProperty("java.version"));
+        env.setProperty("java.vm.name", System.getProperty("java.vm.name"));
+        env.setProperty("os", System.getProperty("os.name")+" "+System.getProperty("os.arch"));
+        env.setProperty("cores", Integer.toString(Runtime.getRuntime().availableProcessors()));
+        try (Writer out = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            env.store(out, "benchmark environment");
+        }
+    }
+
+    /**
+     * Versions of the analysis libraries from the maven descriptors kept in their
+     * jars (and in the shaded benchmarks jar), unknown when run from the IDE classes.
+     */
+    static Map<String, String> dependencyVersions() throws IOException {
+
+        Map<String, String> versions = new LinkedHashMap<>();
+        for (String[] dependency : DEPENDENCIES) {
+            String version = "unknown";
+            try (InputStream in = RegressionHarness.class.getResourceAsStream("/META-INF/maven/"+dependency[0]+"/"+dependency[1]+"/pom.properties")) {
+                if (in != null) {
+                    Properties pom = new Properties();
+                    pom.load(in);
+                    version = pom.getProperty("version", version);
+                }
+            }
+            versions.put(dependency[1], version);
+        }
+        return versions;
+    }
+
+    static String label(Map<String, String> versions) {
+
+        // the period analysers are released together, only the odd ones out are named
+        String period = versions.get("FFT-NLLS");
+        StringBuilder label = new StringBuilder("ejtk-").append(versions.get("eJTK")).append("_period-").append(period);
+        versions.forEach((artifact, version) -> {
+            if (!artifact.equals("eJTK") && !version.equals(period)) label.append('_').append(artifact).append('-').append(version);
+        });
+        return label.toString();
+    }
+
+    static List<Path> runs(Path dir) throws IOException {
+
+        if (!Files.isDirectory(dir)) return Collections.emptyList();
+        try (Stream<Path> files = Files.list(dir)) {
+            // timestamped names sort in time order
+            return files.filter(f -> f.getFileName().toString().endsWith(".json")).sorted().collect(Collectors.toList());
+        }
+    }
+
+    static List<Comparison> compare(Path root, String baselineLabel, String candidateLabel, Path candidate, double threshold) throws IOException {
+
+        List<Path> baseline = new ArrayList<>(runs(root.resolve(baselineLabel)));
+        baseline.remove(candidate);
+        if (baseline.isEmpty()) throw new IllegalArgumentException("No baseline runs stored for: "+baselineLabel);
+
+        List<Comparison> comparisons = compare(load(baseline), load(List.of(candidate)), threshold);
+        String report = report(baselineLabel, baseline.size(), candidateLabel, candidate, threshold, comparisons);
+
+        Path file = candidate.resolveSibling(candidate.getFileName().toString().replace(".json", "")+"-vs-"+baselineLabel+".txt");
+        Files.write(file, report.getBytes(StandardCharsets.UTF_8));
+        System.out.println(report);
+        System.out.println("Report written to: "+file.toAbsolutePath());
+        return comparisons;
+    }
+
+    /**
+     * Iteration scores of one benchmark and parameter combination.
+     */
+    static final class Samples {
+
+        final String key;
+        final String unit;
+        final boolean higherIsBetter;
+        final List<Double> values = new ArrayList<>();
+
+        Samples(String key, String unit, boolean higherIsBetter) {
+            this.key = key;
+            this.unit = unit;
+            this.higherIsBetter = higherIsBetter;
+        }
+
+        double[] array() {
+            return values.stream().mapToDouble(Double::doubleValue).toArray();
+        }
+    }
+
+    static Map<String, Samples> load(List<Path> files) throws IOException {
+
+        Map<String, Samples> samples = new TreeMap<>();
+        for (Path file : files) {
+            Object json = JsonReader.parse(new String(Files.readAllBytes(file), StandardCharsets.UTF_8));
+            for (Object entry : (List<?>) json) {
+                Map<?, ?> result = (Map<?, ?>) entry;
+                Map<?, ?> metric = (Map<?, ?>) result.get("primaryMetric");
+                String mode = (String) result.get("mode");
+
+                Samples s = samples.computeIfAbsent(key(result), k -> new Samples(k, (String) metric.get("scoreUnit"), "thrpt".equals(mode)));
+                for (double value : iterationScores(metric)) {
+                    if (Double.isFinite(value)) s.values.add(value);
+                }
+            }
+        }
+        return samples;
+    }
+
+    /**
+     * Short benchmark name (class.method) with its sorted params and the mode.
+     */
+    static String key(Map<?, ?> result) {
+
+        String benchmark = (String) result.get("benchmark");
+        StringBuilder key = new StringBuilder(benchmark.substring(benchmark.lastIndexOf('.', benchmark.lastIndexOf('.')-1)+1));
+        Map<?, ?> params = (Map<?, ?>) result.get("params");
+        if (params != null) {
+            for (Object name : new TreeSet<>(params.keySet())) {
+                key.append(' ').append(name).append('=').append(params.get(name));
+            }
+        }
+        return key.append(' ').append(result.get("mode")).toString();
+    }
+
+    /**
+     * Score of every measured iteration of every fork. Sample time results keep
+     * histograms instead, their iterations contribute their mean.
+     */
+    static List<Double> iterationScores(Map<?, ?> metric) {
+
+        List<Double> scores = new ArrayList<>();
+        List<?> raw = (List<?>) metric.get("rawData");
+        if (raw != null) {
+            for (Object fork : raw) {
+                for (Object score : (List<?>) fork) scores.add(score(score));
+            }
+            return scores;
+        }
+
+        List<?> histograms = (List<?>) metric.get("rawDataHistogram");
+        if (histograms != null) {
+            for (Object fork : histograms) {
+                for (Object iteration : (List<?>) fork) {
+                    double sum = 0;
+                    double count = 0;
+                    for (Object bin : (List<?>) iteration) {
+                        List<?> valueCount = (List<?>) bin;
+                        double n = score(valueCount.get(1));
+                        sum += score(valueCount.get(0)) * n;
+                        count += n;
+                    }
+                    if (count > 0) scores.add(sum / count);
+                }
+            }
+        }
+        return scores;
+    }
+
+    /**
+     * Json number, or one of the strings JMH writes for the non finite scores.
+     */
+    static double score(Object value) {
+
+        if (value instanceof Number) return ((Number) value).doubleValue();
+        if ("NaN".equals(value)) return Double.NaN;
+        if ("+INF".equals(value) || "Infinity".equals(value)) return Double.POSITIVE_INFINITY;
+        if ("-INF".equals(value) || "-Infinity".equals(value)) return Double.NEGATIVE_INFINITY;
+        throw new IllegalArgumentException("Expected a score not: "+value);
+    }
+
+    static final class Comparison {
+
+        final String key;
+        final String unit;
+        final double baseline;
+        final double candidate;
+        /** relative change of the mean, positive is worse whatever the mode */
+        final double change;
+        final double changeLow;
+        final double changeHigh;
+        final double p;
+        final Verdict verdict;
+
+        Comparison(String key, String unit, double baseline, double candidate, double change, double changeLow, double changeHigh, double p, Verdict verdict) {
+            this.key = key;
+            this.unit = unit;
+            this.baseline = baseline;
+            this.candidate = candidate;
+            this.change = change;
+            this.changeLow = changeLow;
+            this.changeHigh = changeHigh;
+            this.p = p;
+            this.verdict = verdict;
+        }
+
+        static Comparison of(Samples before, Samples after, double threshold) {
+
+            double[] a = before.array();
+            double[] b = after.array();
+            double meanA = mean(a);
+            double meanB = mean(b);
+            if (a.length < 2 || b.length < 2) {
+                return new Comparison(before.key, before.unit, meanA, meanB, Double.NaN, Double.NaN, Double.NaN, Double.NaN, Verdict.TOO_FEW_SAMPLES);
+            }
+
+            // Welch interval for the difference of the means, relative to the baseline
+            double varA = variance(a, meanA) / a.length;
+            double varB = variance(b, meanB) / b.length;
+            double se = Math.sqrt(varA + varB);
+            double half = 0;
+            if (se > 0) {
+                double df = (varA + varB)*(varA + varB) / (varA*varA/(a.length-1) + varB*varB/(b.length-1));
+                half = new TDistribution(df).inverseCumulativeProbability(1 - ALPHA/2) * se;
+            }
+            double sign = before.higherIsBetter ? -1 : 1;
+            double diff = sign*(meanB - meanA);
+            double change = diff / meanA;
+            double low = (diff - half) / meanA;
+            double high = (diff + half) / meanA;
+
+            double p = new MannWhitneyUTest().mannWhitneyUTest(a, b);
+            if (Double.isNaN(p)) p = 1;
+
+            Verdict verdict = Verdict.NO_CHANGE;
+            if (p < ALPHA && change > threshold) verdict = Verdict.REGRESSION;
+            else if (p < ALPHA && change < -threshold) verdict = Verdict.IMPROVEMENT;
+            return new Comparison(before.key, before.unit, meanA, meanB, change, Math.min(low, high), Math.max(low, high), p, verdict);
+        }
+    }
+
+    static List<Comparison> compare(Map<String, Samples> baseline, Map<String, Samples> candidate, double threshold) {
+
+        List<Comparison> comparisons = new ArrayList<>();
+        for (Samples before : baseline.values()) {
+            Samples after = candidate.get(before.key);
+            if (after == null) {
+                comparisons.add(new Comparison(before.key, before.unit, mean(before.array()), Double.NaN, Double.NaN, Double.NaN, Double.NaN, Double.NaN, Verdict.REMOVED));
+            } else {
+                comparisons.add(Comparison.of(before, after, threshold));
+            }
+        }
+        for (Samples after : candidate.values()) {
+            if (!baseline.containsKey(after.key)) {
+                comparisons.add(new Comparison(after.key, after.unit, Double.NaN, mean(after.array()), Double.NaN, Double.NaN, Double.NaN, Double.NaN, Verdict.ADDED));
+            }
+        }
+        return comparisons;
+    }
+
+    static String report(String baselineLabel, int baselineRuns, String candidateLabel, Path candidate, double threshold, List<Comparison> comparisons) {
+
+        StringBuilder out = new StringBuilder();
+        out.append(String.format(Locale.ROOT, "Baseline:  %s (%d runs)%nCandidate: %s (%s)%n", baselineLabel, baselineRuns, candidateLabel, candidate.getFileName()));
+        out.append(String.format(Locale.ROOT, "Regression: worse by more than %.1f%% with Mann-Whitney p < %.2f, change is positive when worse%n%n", threshold*100, ALPHA));
+        out.append(String.format(Locale.ROOT, "%-70s %12s %12s %-10s %9s %20s %8s %s%n",
+                "benchmark", "baseline", "candidate", "unit", "change", "95% CI", "p", "verdict"));
+        for (Comparison c : comparisons) {
+            out.append(String.format(Locale.ROOT, "%-70s %12.4g %12.4g %-10s %8.2f%% %20s %8.4f %s%n",
+                    c.key, c.baseline, c.candidate, c.unit, c.change*100,
+                    Double.isNaN(c.changeLow) ? "" : String.format(Locale.ROOT, "[%.2f%%, %.2f%%]", c.changeLow*100, c.changeHigh*100),
+                    c.p, c.verdict));
+        }
+
+        List<Comparison> regressions = comparisons.stream().filter(c -> c.verdict == Verdict.REGRESSION).collect(Collectors.toList());
+        out.append(String.format(Locale.ROOT, "%n%d regressions, %d improvements, %d compared%n", regressions.size(),
+                comparisons.stream().filter(c -> c.verdict == Verdict.IMPROVEMENT).count(), comparisons.size()));
+        for (Comparison c : regressions) {
+            out.append(String.format(Locale.ROOT, "REGRESSION %s: %.4g -> %.4g %s (%.1f%% worse, p=%.4f)%n",
+                    c.key, c.baseline, c.candidate, c.unit, c.change*100, c.p));
+        }
+        return out.toString();
+    }
+
+    static double mean(double[] values) {
+        return values.length == 0 ? Double.NaN : Arrays.stream(values).sum() / values.length;
+    }
+
+    static double variance(double[] values, double mean) {
+        double sum = 0;
+        for (double v : values) sum += (v - mean)*(v - mean);
+        return sum / (values.length - 1);
+    }
+}
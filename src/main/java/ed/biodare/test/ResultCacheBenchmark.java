@@ -0,0 +1,130 @@
+
+
+package ed.biodare.test;
+
+import ed.biodare.period.PPAMultiAnalyser;
+import ed.biodare.period.fft_nlls.FFTMultiAnalyser2;
+import ed.robust.dom.data.TimeSeries;
+import ed.robust.dom.tsprocessing.PPAResult;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Re-running the same FFT-NLLS job with part of the results already cached.
+ *
+ * Before every invocation a fresh cache is filled with the results of hitRatio
+ * of the series, so the rest (spread evenly over the data) is recomputed. With
+ * disk=true the memory tier holds nothing and all hits come from the files, which
+ * are written anew for every invocation.
+ */
+@Fork(1)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class ResultCacheBenchmark {
+
+
+
+    @State(Scope.Benchmark)
+    public static class ExecutionPlan {
+
+        @Param({ "4" })
+        public int threads;
+
+        @Param({ "0", "0.5", "0.9", "1" })
+        public double hitRatio;
+
+        @Param({ "false", "true" })
+        public boolean disk;
+
+        public int chunkSize = 10;
+        public double periodMin = 20;
+        public double periodMax = 28;
+        int dataSize = 64*5*10;
+        int length = 10*24;
+
+        List<TimeSeries> data;
+        List<PPAResult> expected;
+        PPAMultiAnalyser analyser;
+        Path diskDir;
+
+        CachingPPAAnalyser caching;
+
+        @Setup(Level.Trial)
+        public void setUp() throws IOException {
+            // random series, so every one has its own fingerprint
+            data = FFTBenchmark.makeData(dataSize, length);
+            analyser = new FFTMultiAnalyser2(threads);
+            expected = analyser.analyse(data, periodMin, periodMax, chunkSize, threads);
+            if (disk) diskDir = Files.createTempDirectory("ppa-cache");
+        }
+
+        @Setup(Level.Invocation)
+        public void prime() throws IOException {
+            // results computed by the previous invocation were written too
+            if (disk) clearDir();
+            PPAResultCache cache = disk
+                    ? new PPAResultCache(0, r -> 1, diskDir)
+                    : new PPAResultCache(dataSize);
+
+            double cached = 0;
+            for (int i = 0; i < data.size(); i++) {
+                cached += hitRatio;
+                if (cached >= 1) {
+                    cached -= 1;
+                    PPAResultCache.Key key = new PPAResultCache.Key(SeriesFingerprint.of(data.get(i)), "fft", periodMin, periodMax);
+                    cache.put(key, expected.get(i));
+                }
+            }
+            caching = new CachingPPAAnalyser(analyser, "fft", cache);
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() throws IOException {
+            if (diskDir == null) return;
+            clearDir();
+            Files.deleteIfExists(diskDir);
+        }
+
+        void clearDir() throws IOException {
+            try (Stream<Path> files = Files.list(diskDir)) {
+                files.forEach(p -> p.toFile().delete());
+            }
+        }
+    }
+
+    @Benchmark
+    public List<PPAResult> uncached(ExecutionPlan params, Blackhole blackHole) {
+
+        List<PPAResult> results = params.analyser.analyse(params.data, params.periodMin, params.periodMax, params.chunkSize, params.threads);
+        blackHole.consume(results);
+        return results;
+    }
+
+    @Benchmark
+    public List<PPAResult> cached(ExecutionPlan params, Blackhole blackHole) {
+
+        List<PPAResult> results = params.caching.analyse(params.data, params.periodMin, params.periodMax, params.chunkSize, params.threads);
+        blackHole.consume(results);
+        return results;
+    }
+}
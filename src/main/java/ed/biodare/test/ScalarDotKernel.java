@@ -0,0 +1,21 @@
+
+
+package ed.biodare.test;
+
+public final class ScalarDotKernel implements DotKernel {
+
+    @Override
+    public double dot(double[] a, int aOffset, double[] b, int bOffset, int length) {
+
+        double val = 0;
+        for (int i = 0; i < length; i++) {
+            val += a[aOffset+i] * b[bOffset+i];
+        }
+        return val;
+    }
+
+    @Override
+    public String name() {
+        return "scalar";
+    }
+}
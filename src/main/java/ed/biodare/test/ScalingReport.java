@@ -0,0 +1,232 @@
+
+
+package ed.biodare.test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.infra.BenchmarkParams;
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the selected benchmarks over a thread sweep (1, 2, 4 ... up to the cores)
+ * and fits the Universal Scalability Law to each of them:
+ *
+ * C(N) = N / (1 + sigma(N-1) + kappa N(N-1))
+ *
+ * where C(N) is the throughput relative to one thread, sigma the contention
+ * (serial fraction, the Amdahl term) and kappa the coherency (crosstalk) cost.
+ * The fit is linear least squares on N/C(N) - 1 = sigma(N-1) + kappa N(N-1).
+ *
+ * Writes prefix.csv (one row per point), prefix.json (points and fits) and
+ * prefix.txt (the summary, also printed).
+ *
+ * java -cp target/benchmarks.jar ed.biodare.test.ScalingReport [include regex] [max threads] [out prefix]
+ * e.g. "\.(SharedPoolBenchmark|ConcurrentRequestsBenchmark)\." 16 scaling
+ * (the benchmarks need a threads param, the regex is matched anywhere in their full names)
+ */
+public class ScalingReport {
+
+    public static void main(String[] args) throws RunnerException, IOException {
+
+        String include = args.length > 0 ? args[0] : "SharedPoolBenchmark";
+        int maxThreads = args.length > 1 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+        String prefix = args.length > 2 ? args[2] : "scaling";
+
+        String[] sweep = threadSweep(maxThreads);
+        Collection<RunResult> results = new Runner(new OptionsBuilder()
+                .include(include)
+                .param("threads", sweep)
+                .build()).run();
+
+        Map<String, TreeMap<Integer, Double>> curves = curves(results);
+        Map<String, Fit> fits = new LinkedHashMap<>();
+        curves.forEach((name, curve) -> fits.put(name, Fit.of(curve)));
+
+        write(Paths.get(prefix+".csv"), csv(curves));
+        write(Paths.get(prefix+".json"), json(curves, fits));
+        String summary = summary(fits);
+        write(Paths.get(prefix+".txt"), summary);
+        System.out.println(summary);
+    }
+
+    static String[] threadSweep(int maxThreads) {
+
+        List<String> sweep = new ArrayList<>();
+        for (int n = 1; n < maxThreads; n*=2) sweep.add(Integer.toString(n));
+        sweep.add(Integer.toString(maxThreads));
+        return sweep.toArray(new String[0]);
+    }
+
+    /**
+     * Throughput (ops per time unit) per thread count, for every benchmark and
+     * combination of its other parameters. Time per op modes are inverted.
+     */
+    static Map<String, TreeMap<Integer, Double>> curves(Collection<RunResult> results) {
+
+        Map<String, TreeMap<Integer, Double>> curves = new LinkedHashMap<>();
+        for (RunResult result : results) {
+            BenchmarkParams params = result.getParams();
+            String threads = params.getParam("threads");
+            if (threads == null) continue;
+
+            StringBuilder name = new StringBuilder(params.getBenchmark().substring(params.getBenchmark().lastIndexOf('.', params.getBenchmark().lastIndexOf('.')-1)+1));
+            for (String key : params.getParamsKeys()) {
+                if (!key.equals("threads")) name.append(' ').append(key).append('=').append(params.getParam(key));
+            }
+            if (params.getMode() != Mode.Throughput) name.append(' ').append(params.getMode().shortLabel());
+
+            double score = result.getPrimaryResult().getScore();
+            double throughput = params.getMode() == Mode.Throughput ? score : 1.0 / score;
+            curves.computeIfAbsent(name.toString(), k -> new TreeMap<>()).put(Integer.parseInt(threads), throughput);
+        }
+        return curves;
+    }
+
+    static final class Fit {
+
+        final double baseline;
+        final double sigma;
+        final double kappa;
+        final double amdahlSigma;
+        final double r2;
+        final int points;
+
+        Fit(double baseline, double sigma, double kappa, double amdahlSigma, double r2, int points) {
+            this.baseline = baseline;
+            this.sigma = sigma;
+            this.kappa = kappa;
+            this.amdahlSigma = amdahlSigma;
+            this.r2 = r2;
+            this.points = points;
+        }
+
+        static Fit of(TreeMap<Integer, Double> curve) {
+
+            Double baseline = curve.get(1);
+            if (baseline == null || curve.size() < 3) {
+                return new Fit(baseline == null ? Double.NaN : baseline, Double.NaN, Double.NaN, Double.NaN, Double.NaN, curve.size());
+            }
+
+            // y = sigma x1 + kappa x2, no intercept
+            double s11 = 0, s12 = 0, s22 = 0, s1y = 0, s2y = 0;
+            for (Map.Entry<Integer, Double> e : curve.entrySet()) {
+                int n = e.getKey();
+                double c = e.getValue() / baseline;
+                double y = n / c - 1;
+                double x1 = n - 1;
+                double x2 = (double) n * (n - 1);
+                s11 += x1*x1;
+                s12 += x1*x2;
+                s22 += x2*x2;
+                s1y += x1*y;
+                s2y += x2*y;
+            }
+            double det = s11*s22 - s12*s12;
+            double sigma = (s1y*s22 - s2y*s12) / det;
+            double kappa = (s2y*s11 - s1y*s12) / det;
+            double amdahl = s1y / s11;
+
+            double ssRes = 0, ssTot = 0, mean = 0;
+            for (double x : curve.values()) mean += x / baseline;
+            mean /= curve.size();
+            for (Map.Entry<Integer, Double> e : curve.entrySet()) {
+                double c = e.getValue() / baseline;
+                double model = usl(e.getKey(), sigma, kappa);
+                ssRes += (c - model)*(c - model);
+                ssTot += (c - mean)*(c - mean);
+            }
+            double r2 = ssTot == 0 ? 1 : 1 - ssRes / ssTot;
+            return new Fit(baseline, sigma, kappa, amdahl, r2, curve.size());
+        }
+
+        static double usl(double n, double sigma, double kappa) {
+            return n / (1 + sigma*(n - 1) + kappa*n*(n - 1));
+        }
+
+        /**
+         * Thread count with the highest modelled throughput, infinite without coherency cost.
+         */
+        double peakThreads() {
+            return kappa > 0 ? Math.sqrt((1 - sigma) / kappa) : Double.POSITIVE_INFINITY;
+        }
+
+        double peakSpeedup() {
+            double n = peakThreads();
+            return Double.isInfinite(n) ? (sigma > 0 ? 1 / sigma : Double.POSITIVE_INFINITY) : usl(n, sigma, kappa);
+        }
+    }
+
+    static String csv(Map<String, TreeMap<Integer, Double>> curves) {
+
+        StringBuilder out = new StringBuilder("benchmark,threads,throughput,speedup,efficiency\n");
+        curves.forEach((name, curve) -> {
+            Double base = curve.get(1);
+            curve.forEach((n, x) -> {
+                double speedup = base == null ? Double.NaN : x / base;
+                out.append(String.format(Locale.ROOT, "\"%s\",%d,%.6g,%.4f,%.4f%n", name, n, x, speedup, speedup / n));
+            });
+        });
+        return out.toString();
+    }
+
+    static String json(Map<String, TreeMap<Integer, Double>> curves, Map<String, Fit> fits) {
+
+        StringBuilder out = new StringBuilder("[\n");
+        int i = 0;
+        for (Map.Entry<String, TreeMap<Integer, Double>> e : curves.entrySet()) {
+            Fit fit = fits.get(e.getKey());
+            out.append("  {\"benchmark\": \"").append(e.getKey().replace("\"", "\\\"")).append("\",\n");
+            out.append("   \"points\": [");
+            int p = 0;
+            for (Map.Entry<Integer, Double> point : e.getValue().entrySet()) {
+                if (p++ > 0) out.append(", ");
+                out.append(String.format(Locale.ROOT, "{\"threads\": %d, \"throughput\": %s}", point.getKey(), number(point.getValue())));
+            }
+            out.append("],\n");
+            out.append(String.format(Locale.ROOT, "   \"usl\": {\"sigma\": %s, \"kappa\": %s, \"r2\": %s, \"peakThreads\": %s, \"peakSpeedup\": %s},%n",
+                    number(fit.sigma), number(fit.kappa), number(fit.r2), number(fit.peakThreads()), number(fit.peakSpeedup())));
+            out.append(String.format(Locale.ROOT, "   \"amdahl\": {\"serialFraction\": %s}}", number(fit.amdahlSigma)));
+            out.append(++i < curves.size() ? ",\n" : "\n");
+        }
+        return out.append("]\n").toString();
+    }
+
+    static String number(double d) {
+        // json has no NaN or Infinity
+        return Double.isFinite(d) ? String.format(Locale.ROOT, "%.6g", d) : "null";
+    }
+
+    static String summary(Map<String, Fit> fits) {
+
+        StringBuilder out = new StringBuilder();
+        out.append(String.format(Locale.ROOT, "%-60s %10s %10s %8s %10s %10s %8s%n",
+                "benchmark", "sigma", "kappa", "r2", "peak N", "peak S", "amdahl"));
+        fits.forEach((name, fit) -> {
+            if (Double.isNaN(fit.sigma)) {
+                out.append(String.format(Locale.ROOT, "%-60s needs threads=1 and at least 3 points, has %d%n", name, fit.points));
+                return;
+            }
+            out.append(String.format(Locale.ROOT, "%-60s %10.4f %10.6f %8.3f %10.1f %10.2f %8.4f%n",
+                    name, fit.sigma, fit.kappa, fit.r2, fit.peakThreads(), fit.peakSpeedup(), fit.amdahlSigma));
+        });
+        return out.toString();
+    }
+
+    static void write(Path file, String content) throws IOException {
+        Files.write(file, content.getBytes(StandardCharsets.UTF_8));
+    }
+}
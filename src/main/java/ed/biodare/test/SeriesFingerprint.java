@@ -0,0 +1,68 @@
+
+
+package ed.biodare.test;
+
+import ed.robust.dom.data.TimeSeries;
+import ed.robust.dom.util.Pair;
+import java.io.Serializable;
+
+/**
+ * 128 bit content hash of a series (times and values), two independent 64 bit
+ * mixes over the raw double bits, so equal content gives equal fingerprints
+ * regardless of which object holds it.
+ */
+public final class SeriesFingerprint implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    final long hi;
+    final long lo;
+
+    SeriesFingerprint(long hi, long lo) {
+        this.hi = hi;
+        this.lo = lo;
+    }
+
+    public static SeriesFingerprint of(TimeSeries series) {
+        Pair<double[], double[]> tv = series.getTimesAndValues();
+        return of(tv.getLeft(), tv.getRight());
+    }
+
+    public static SeriesFingerprint of(double[] times, double[] values) {
+
+        long h1 = 0xcbf29ce484222325L ^ times.length;
+        long h2 = 0x9e3779b97f4a7c15L ^ ((long) values.length << 32);
+        for (double[] column : new double[][] {times, values}) {
+            for (double d : column) {
+                long bits = Double.doubleToLongBits(d);
+                h1 = (h1 ^ bits) * 0x100000001b3L;
+                h2 = mix(h2 + bits);
+            }
+        }
+        return new SeriesFingerprint(mix(h1), h2);
+    }
+
+    static long mix(long z) {
+        // splitmix64 finaliser
+        z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+        z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+        return z ^ (z >>> 31);
+    }
+
+    @Override
+    public int hashCode() {
+        return (int) (hi ^ (hi >>> 32));
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (!(obj instanceof SeriesFingerprint)) return false;
+        SeriesFingerprint other = (SeriesFingerprint) obj;
+        return hi == other.hi && lo == other.lo;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%016x%016x", hi, lo);
+    }
+}
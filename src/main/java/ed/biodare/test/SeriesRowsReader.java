@@ -0,0 +1,142 @@
+
+
+package ed.biodare.test;
+
+import ed.robust.dom.data.TimeSeries;
+import ed.robust.dom.util.Pair;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Incremental reader of csv exports with one series per row.
+ *
+ * First line holds the label header and the times, every following line is
+ * label,value,value... Empty cells are missing points. Unlike the column layout
+ * read by TimeSeriesFileHandler, a series is complete as soon as its line is
+ * read, so large files can be analysed while they are still being parsed.
+ */
+public class SeriesRowsReader implements Closeable {
+
+    final BufferedReader reader;
+    final String sep;
+    final double[] times;
+    int line = 1;
+
+    public SeriesRowsReader(BufferedReader reader, String sep) throws IOException {
+        this.reader = reader;
+        this.sep = sep;
+        this.times = readTimes(reader.readLine(), sep);
+    }
+
+    public static SeriesRowsReader open(Path file) throws IOException {
+        return new SeriesRowsReader(Files.newBufferedReader(file, StandardCharsets.UTF_8), ",");
+    }
+
+    /**
+     * @return next series or null at the end of input
+     */
+    public TimeSeries next() throws IOException {
+
+        String row = reader.readLine();
+        while (row != null && row.isBlank()) {
+            line++;
+            row = reader.readLine();
+        }
+        if (row == null) return null;
+        line++;
+
+        String[] cells = row.split(sep, -1);
+        if (cells.length - 1 > times.length) {
+            throw new IOException("Line "+line+" has "+(cells.length-1)+" values for "+times.length+" times");
+        }
+
+        double[] t = new double[cells.length-1];
+        double[] v = new double[cells.length-1];
+        int size = 0;
+        for (int i = 1; i < cells.length; i++) {
+            String cell = cells[i].trim();
+            if (cell.isEmpty()) continue;
+            try {
+                v[size] = Double.parseDouble(cell);
+            } catch (NumberFormatException e) {
+                throw new IOException("Not a number at line "+line+" column "+(i+1)+": "+cell, e);
+            }
+            t[size] = times[i-1];
+            size++;
+        }
+        return new TimeSeries(Arrays.copyOf(t, size), Arrays.copyOf(v, size));
+    }
+
+    public List<TimeSeries> readAll() throws IOException {
+
+        List<TimeSeries> series = new ArrayList<>();
+        for (TimeSeries ts = next(); ts != null; ts = next()) {
+            series.add(ts);
+        }
+        return series;
+    }
+
+    @Override
+    public void close() throws IOException {
+        reader.close();
+    }
+
+    static double[] readTimes(String header, String sep) throws IOException {
+
+        if (header == null) throw new IOException("Missing times header");
+        String[] cells = header.split(sep, -1);
+        double[] times = new double[cells.length-1];
+        try {
+            for (int i = 1; i < cells.length; i++) {
+                times[i-1] = Double.parseDouble(cells[i].trim());
+            }
+        } catch (NumberFormatException e) {
+            throw new IOException("Not a number in times header: "+e.getMessage(), e);
+        }
+        return times;
+    }
+
+    /**
+     * Writes series sampled on a common grid (as in p24_48-120.csv) in the row layout.
+     */
+    public static void write(List<TimeSeries> series, Path file) throws IOException {
+
+        double[] grid = series.stream()
+                .flatMapToDouble( ts -> Arrays.stream(ts.getTimesAndValues().getLeft()))
+                .distinct()
+                .sorted()
+                .toArray();
+
+        try (BufferedWriter out = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            out.write("time");
+            for (double t : grid) {
+                out.write(",");
+                out.write(Double.toString(t));
+            }
+            out.newLine();
+
+            int ix = 0;
+            for (TimeSeries ts : series) {
+                Pair<double[], double[]> tv = ts.getTimesAndValues();
+                out.write(Integer.toString(++ix));
+                int p = 0;
+                for (double t : grid) {
+                    out.write(",");
+                    if (p < tv.getLeft().length && tv.getLeft()[p] == t) {
+                        out.write(Double.toString(tv.getRight()[p]));
+                        p++;
+                    }
+                }
+                out.newLine();
+            }
+        }
+    }
+}
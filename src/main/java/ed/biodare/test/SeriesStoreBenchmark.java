@@ -0,0 +1,170 @@
+
+
+package ed.biodare.test;
+
+import ed.biodare.period.fft_nlls.FFTMultiAnalyser2;
+import ed.robust.dom.data.TimeSeries;
+import ed.robust.dom.tsprocessing.PPAResult;
+import ed.robust.error.RobustFormatException;
+import ed.robust.util.timeseries.TimeSeriesFileHandler;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.DoubleBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Loading series by parsing the csv export against reading the binary columnar store.
+ *
+ * The csv is the bundled p24_48-120.csv with its columns replicated up to dataSize
+ * series, the store holds the same series.
+ */
+@Fork(1)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class SeriesStoreBenchmark {
+
+
+
+    @State(Scope.Benchmark)
+    public static class ExecutionPlan {
+
+        @Param({ "1920", "19200" })
+        public int dataSize;
+
+        @Param({ "4" })
+        public int threads;
+
+        public int chunkSize = 10;
+        public double periodMin = 18;
+        public double periodMax = 36;
+
+        Path csv;
+        Path store;
+
+        @Setup(Level.Trial)
+        public void setUp() throws RobustFormatException, IOException {
+            csv = Files.createTempFile("series", ".csv");
+            replicateColumns("p24_48-120.csv", dataSize, csv);
+
+            store = Files.createTempFile("series", ".bdts");
+            try (InputStream in = Files.newInputStream(csv)) {
+                ColumnarSeriesStore.write(TimeSeriesFileHandler.readFromText(in, ",", 10), store);
+            }
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() throws IOException {
+            Files.deleteIfExists(csv);
+            Files.deleteIfExists(store);
+        }
+    }
+
+    @Benchmark
+    public List<TimeSeries> readText(ExecutionPlan params, Blackhole blackHole) throws RobustFormatException, IOException {
+
+        try (InputStream in = Files.newInputStream(params.csv)) {
+            List<TimeSeries> series = TimeSeriesFileHandler.readFromText(in, ",", 10);
+            blackHole.consume(series);
+            return series;
+        }
+    }
+
+    @Benchmark
+    public List<TimeSeries> readStore(ExecutionPlan params, Blackhole blackHole) throws IOException {
+
+        try (ColumnarSeriesStore store = ColumnarSeriesStore.open(params.store)) {
+            List<TimeSeries> series = new ArrayList<>(store.asTimeSeries());
+            blackHole.consume(series);
+            return series;
+        }
+    }
+
+    @Benchmark
+    public double scanStore(ExecutionPlan params) throws IOException {
+
+        double val = 0;
+        try (ColumnarSeriesStore store = ColumnarSeriesStore.open(params.store)) {
+            for (int i = 0; i < store.size(); i++) {
+                DoubleBuffer values = store.values(i);
+                while (values.hasRemaining()) val += values.get();
+            }
+        }
+        return val;
+    }
+
+    @Benchmark
+    public List<PPAResult> fftFromStore(ExecutionPlan params, Blackhole blackHole) throws IOException {
+
+        try (ColumnarSeriesStore store = ColumnarSeriesStore.open(params.store)) {
+            SharedPPAAnalyser analyser = new SharedPPAAnalyser(AnalysisExecutors.shared(AnalysisExecutors.Kind.FIXED, params.threads),
+                    () -> new FFTMultiAnalyser2(1));
+            List<PPAResult> results = analyser.analyse(store.asTimeSeries(), params.periodMin, params.periodMax, params.chunkSize);
+            blackHole.consume(results);
+            return results;
+        }
+    }
+
+    /**
+     * Copies the resource csv with its series columns repeated, keeping the label
+     * and header rows, until it has at least dataSize series. The first row holds the ids.
+     */
+    static void replicateColumns(String resource, int dataSize, Path file) throws IOException {
+
+        List<String> lines;
+        try (BufferedReader in = new BufferedReader(new InputStreamReader(
+                SeriesStoreBenchmark.class.getResourceAsStream(resource), StandardCharsets.UTF_8))) {
+            lines = in.lines().collect(Collectors.toList());
+        }
+
+        try (BufferedWriter out = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            boolean idsRow = true;
+            for (String line : lines) {
+                int split = line.indexOf(',');
+                String label = line.substring(0, split);
+                String cells = line.substring(split);
+                int columns = cells.split(",", -1).length - 1;
+                int copies = (dataSize+columns-1) / columns;
+
+                out.write(label);
+                if (idsRow) {
+                    // copies get their own ids
+                    for (int id = 1; id <= copies*columns; id++) {
+                        out.write(",");
+                        out.write(Integer.toString(id));
+                    }
+                    idsRow = false;
+                } else {
+                    for (int i = 0; i < copies; i++) {
+                        out.write(cells);
+                    }
+                }
+                out.newLine();
+            }
+        }
+    }
+}
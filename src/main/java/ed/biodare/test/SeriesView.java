@@ -0,0 +1,203 @@
+
+
+package ed.biodare.test;
+
+import ed.robust.dom.data.TimeSeries;
+import ed.robust.dom.util.Pair;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.RandomAccess;
+
+/**
+ * Read only series over ranges of shared arrays, e.g. the arrays of another
+ * series or one row of a flat buffer holding many series.
+ *
+ * Views never copy: replicating a dataset, windowing or taking a sub range only
+ * makes new views (or none at all, see replicate). The arrays must not be
+ * modified while viewed. TimeSeries are made only when an analyser needs them,
+ * see asTimeSeries.
+ */
+public final class SeriesView {
+
+    final double[] times;
+    final int timesOffset;
+    final double[] values;
+    final int valuesOffset;
+    final int length;
+
+    SeriesView(double[] times, int timesOffset, double[] values, int valuesOffset, int length) {
+        if (length < 0 || timesOffset < 0 || valuesOffset < 0
+                || timesOffset+length > times.length || valuesOffset+length > values.length) {
+            throw new IndexOutOfBoundsException("Range "+timesOffset+"/"+valuesOffset+"+"+length+" outside "+times.length+"/"+values.length);
+        }
+        this.times = times;
+        this.timesOffset = timesOffset;
+        this.values = values;
+        this.valuesOffset = valuesOffset;
+        this.length = length;
+    }
+
+    public static SeriesView of(double[] times, double[] values) {
+        if (times.length != values.length) throw new IllegalArgumentException("Times and values length mismatch: "+times.length+"!="+values.length);
+        return new SeriesView(times, 0, values, 0, times.length);
+    }
+
+    /**
+     * View over the arrays of the series, they are taken out of it once.
+     */
+    public static SeriesView of(TimeSeries series) {
+        Pair<double[], double[]> tv = series.getTimesAndValues();
+        return of(tv.getLeft(), tv.getRight());
+    }
+
+    /**
+     * Views over the rows of a flat row major buffer, all sharing the same times.
+     */
+    public static List<SeriesView> rows(double[] times, double[] flat) {
+
+        int length = times.length;
+        if (length == 0 || flat.length % length != 0) {
+            throw new IllegalArgumentException("Buffer of "+flat.length+" is not made of rows of length "+length);
+        }
+        return new AbstractViewList(flat.length / length) {
+            @Override
+            public SeriesView get(int index) {
+                return new SeriesView(times, 0, flat, index*length, length);
+            }
+        };
+    }
+
+    public int length() {
+        return length;
+    }
+
+    public double time(int index) {
+        return times[timesOffset+checked(index)];
+    }
+
+    public double value(int index) {
+        return values[valuesOffset+checked(index)];
+    }
+
+    int checked(int index) {
+        if (index < 0 || index >= length) throw new IndexOutOfBoundsException("Point "+index+" of "+length);
+        return index;
+    }
+
+    /**
+     * Points from (inclusive) to (exclusive).
+     */
+    public SeriesView window(int from, int to) {
+        if (from < 0 || to > length || from > to) throw new IndexOutOfBoundsException("Window "+from+"-"+to+" of "+length);
+        return new SeriesView(times, timesOffset+from, values, valuesOffset+from, to-from);
+    }
+
+    /**
+     * Points with times in [timeMin, timeMax], the times must be sorted.
+     */
+    public SeriesView between(double timeMin, double timeMax) {
+        return window(lowerBound(timeMin, false), lowerBound(timeMax, true));
+    }
+
+    /**
+     * First point with time over the bound (after) or at or over it.
+     */
+    int lowerBound(double time, boolean after) {
+
+        int low = 0;
+        int high = length;
+        while (low < high) {
+            int mid = (low+high) >>> 1;
+            double t = times[timesOffset+mid];
+            if (t < time || (after && t == time)) low = mid+1;
+            else high = mid;
+        }
+        return low;
+    }
+
+    /**
+     * A new TimeSeries with copies of the viewed points.
+     */
+    public TimeSeries toTimeSeries() {
+        return new TimeSeries(Arrays.copyOfRange(times, timesOffset, timesOffset+length),
+                Arrays.copyOfRange(values, valuesOffset, valuesOffset+length));
+    }
+
+    /**
+     * The views repeated up to size, without copies of the data or of the views.
+     */
+    public static List<SeriesView> replicate(List<SeriesView> views, int size) {
+
+        if (views.isEmpty() && size > 0) throw new IllegalArgumentException("Nothing to replicate");
+        return new AbstractViewList(size) {
+            @Override
+            public SeriesView get(int index) {
+                return views.get(checkedIndex(index) % views.size());
+            }
+        };
+    }
+
+    /**
+     * The same window of every view, made when accessed.
+     */
+    public static List<SeriesView> windows(List<SeriesView> views, double timeMin, double timeMax) {
+
+        return new AbstractViewList(views.size()) {
+            @Override
+            public SeriesView get(int index) {
+                return views.get(index).between(timeMin, timeMax);
+            }
+        };
+    }
+
+    /**
+     * List which makes the TimeSeries only when accessed, so chunks handed to
+     * the analysers are converted by the worker threads and the full list is never
+     * held (see SharedPPAAnalyser.analyseViews). Every get copies the viewed points
+     * again into a new TimeSeries, callers reading an element more than once
+     * should copy the list first.
+     */
+    public static List<TimeSeries> asTimeSeries(List<SeriesView> views) {
+
+        return new TimeSeriesList(views);
+    }
+
+    abstract static class AbstractViewList extends AbstractList<SeriesView> implements RandomAccess {
+
+        final int size;
+
+        AbstractViewList(int size) {
+            this.size = size;
+        }
+
+        int checkedIndex(int index) {
+            if (index < 0 || index >= size) throw new IndexOutOfBoundsException("Series "+index+" of "+size);
+            return index;
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+    }
+
+    static final class TimeSeriesList extends AbstractList<TimeSeries> implements RandomAccess {
+
+        final List<SeriesView> views;
+
+        TimeSeriesList(List<SeriesView> views) {
+            this.views = views;
+        }
+
+        @Override
+        public TimeSeries get(int index) {
+            return views.get(index).toTimeSeries();
+        }
+
+        @Override
+        public int size() {
+            return views.size();
+        }
+    }
+}
@@ -0,0 +1,217 @@
+
+
+package ed.biodare.test;
+
+import ed.biodare.period.fft_nlls.FFTMultiAnalyser2;
+import ed.robust.dom.data.TimeSeries;
+import ed.robust.dom.tsprocessing.PPAResult;
+import ed.robust.dom.util.Pair;
+import ed.robust.error.RobustFormatException;
+import ed.robust.util.timeseries.TimeSeriesFileHandler;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.ref.Reference;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Setting up datasets from copied TimeSeries (as PPABenchmark.readTSData does)
+ * against series views over the shared arrays.
+ *
+ * replicate* expand the bundled p24_48-120.csv series to dataSize, window* cut
+ * every series to the [windowMin, windowMax] hours. The heap retained by the
+ * replicated datasets is printed at the start of each trial, allocation per
+ * operation comes with -prof gc.
+ *
+ * analyse* run the FFT-NLLS analysis of analysedSize replicated series on a shared
+ * pool, over TimeSeries copies against views converted chunk by chunk on the workers.
+ */
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class SeriesViewBenchmark {
+
+
+
+    @State(Scope.Benchmark)
+    public static class ExecutionPlan {
+
+        @Param({ "10000", "100000" })
+        public int dataSize;
+
+        public double windowMin = 24;
+        public double windowMax = 72;
+
+        List<TimeSeries> series;
+        List<SeriesView> views;
+
+        List<TimeSeries> seriesCopies;
+        List<SeriesView> viewCopies;
+
+        @Setup(Level.Trial)
+        public void setUp() throws RobustFormatException, IOException {
+
+            series = readSeries();
+            views = series.stream().map(SeriesView::of).collect(Collectors.toList());
+
+            System.out.printf("%nretained heap for %d series, TimeSeries copies: %.2f MB views: %.4f MB%n", dataSize,
+                    retainedMB(() -> replicate(series, dataSize)), retainedMB(() -> SeriesView.replicate(views, dataSize)));
+
+            seriesCopies = replicate(series, dataSize);
+            viewCopies = SeriesView.replicate(views, dataSize);
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class AnalysisPlan {
+
+        @Param({ "1000" })
+        public int analysedSize;
+
+        @Param({ "4" })
+        public int threads;
+
+        public int chunkSize = 10;
+        public double periodMin = 18;
+        public double periodMax = 36;
+
+        List<TimeSeries> seriesCopies;
+        List<SeriesView> viewCopies;
+
+        ExecutorService pool;
+        SharedPPAAnalyser analyser;
+
+        @Setup(Level.Trial)
+        public void setUp() throws RobustFormatException, IOException {
+
+            List<TimeSeries> series = readSeries();
+            seriesCopies = replicate(series, analysedSize);
+            viewCopies = SeriesView.replicate(series.stream().map(SeriesView::of).collect(Collectors.toList()), analysedSize);
+
+            pool = AnalysisExecutors.newPool(AnalysisExecutors.Kind.FIXED, threads);
+            analyser = new SharedPPAAnalyser(pool, () -> new FFTMultiAnalyser2(1));
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() {
+            pool.shutdown();
+        }
+    }
+
+    @Benchmark
+    public List<TimeSeries> replicateTimeSeries(ExecutionPlan params, Blackhole blackHole) {
+
+        List<TimeSeries> data = replicate(params.series, params.dataSize);
+        blackHole.consume(data);
+        return data;
+    }
+
+    @Benchmark
+    public List<SeriesView> replicateViews(ExecutionPlan params, Blackhole blackHole) {
+
+        List<SeriesView> data = SeriesView.replicate(params.views, params.dataSize);
+        blackHole.consume(data);
+        return data;
+    }
+
+    @Benchmark
+    public List<TimeSeries> windowTimeSeries(ExecutionPlan params, Blackhole blackHole) {
+
+        List<TimeSeries> windows = new ArrayList<>(params.seriesCopies.size());
+        for (TimeSeries ts : params.seriesCopies) {
+            Pair<double[], double[]> tv = ts.getTimesAndValues();
+            double[] times = tv.getLeft();
+            int from = 0;
+            while (from < times.length && times[from] < params.windowMin) from++;
+            int to = from;
+            while (to < times.length && times[to] <= params.windowMax) to++;
+            windows.add(new TimeSeries(Arrays.copyOfRange(times, from, to), Arrays.copyOfRange(tv.getRight(), from, to)));
+        }
+        blackHole.consume(windows);
+        return windows;
+    }
+
+    @Benchmark
+    public int windowViews(ExecutionPlan params, Blackhole blackHole) {
+
+        // the windows are made lazily, so they are all touched
+        int points = 0;
+        for (SeriesView view : SeriesView.windows(params.viewCopies, params.windowMin, params.windowMax)) {
+            points += view.length();
+            blackHole.consume(view);
+        }
+        return points;
+    }
+
+    @Benchmark
+    public List<PPAResult> analyseTimeSeries(AnalysisPlan params, Blackhole blackHole) {
+
+        List<PPAResult> results = params.analyser.analyse(params.seriesCopies, params.periodMin, params.periodMax, params.chunkSize);
+        blackHole.consume(results);
+        return results;
+    }
+
+    @Benchmark
+    public List<PPAResult> analyseViews(AnalysisPlan params, Blackhole blackHole) {
+
+        List<PPAResult> results = params.analyser.analyseViews(params.viewCopies, params.periodMin, params.periodMax, params.chunkSize);
+        blackHole.consume(results);
+        return results;
+    }
+
+    static List<TimeSeries> readSeries() throws RobustFormatException, IOException {
+
+        try (InputStream in = SeriesViewBenchmark.class.getResourceAsStream("p24_48-120.csv")) {
+            return TimeSeriesFileHandler.readFromText(in, ",", 10);
+        }
+    }
+
+    /**
+     * Copies as in PPABenchmark.readTSData, each a new TimeSeries made of the arrays of the original.
+     */
+    static List<TimeSeries> replicate(List<TimeSeries> series, int dataSize) {
+
+        List<TimeSeries> copies = new ArrayList<>(dataSize);
+        for (int i = 0; i < dataSize; i++) {
+            Pair<double[], double[]> tv = series.get(i % series.size()).getTimesAndValues();
+            copies.add(new TimeSeries(tv.getLeft(), tv.getRight()));
+        }
+        return copies;
+    }
+
+    static double retainedMB(Supplier<Object> build) {
+
+        long before = usedHeap();
+        Object kept = build.get();
+        long after = usedHeap();
+        Reference.reachabilityFence(kept);
+        return (after - before) / (1024.0*1024.0);
+    }
+
+    static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) System.gc();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
@@ -0,0 +1,106 @@
+
+
+package ed.biodare.test;
+
+import ed.biodare.rhythm.ejtk.BD2JTK;
+import ed.biodare.rhythm.ejtk.BD2eJTKRes;
+import ed.biodare.rhythm.ejtk.patterns.JTKPattern;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.function.Supplier;
+
+/**
+ * Runs (e)JTK on a shared pool, with one single threaded analyser per worker thread.
+ */
+public class SharedJTKAnalyser {
+
+    final ExecutorService pool;
+    final ThreadLocal<BD2JTK> analysers;
+    // per worker rows the DataMatrix chunks are copied into
+    final ThreadLocal<double[][]> scratch = ThreadLocal.withInitial(() -> new double[0][]);
+    final String method;
+    final AnalysisMetrics metrics;
+
+    public SharedJTKAnalyser(ExecutorService pool, Supplier<BD2JTK> singleThreadedFactory) {
+        this(pool, singleThreadedFactory, "jtk", AnalysisMetrics.NOOP);
+    }
+
+    /**
+     * @param method name the chunks are reported under to the metrics
+     */
+    public SharedJTKAnalyser(ExecutorService pool, Supplier<BD2JTK> singleThreadedFactory, String method, AnalysisMetrics metrics) {
+        this.pool = pool;
+        this.analysers = ThreadLocal.withInitial(singleThreadedFactory);
+        this.method = method;
+        this.metrics = metrics;
+    }
+
+    public List<BD2eJTKRes> analyseData(double[][] data, double[] zts, List<JTKPattern> patterns, int chunkSize) {
+
+        if (chunkSize < 1) throw new IllegalArgumentException("Chunk size must be positive not: "+chunkSize);
+
+        List<Callable<List<BD2eJTKRes>>> tasks = new ArrayList<>();
+        for (int ix = 0; ix < data.length; ix+=chunkSize) {
+            double[][] part = Arrays.copyOfRange(data, ix, Math.min(ix+chunkSize, data.length));
+            tasks.add(Instrumented.chunk(method, part.length, () -> analysers.get().analyseData(part, zts, patterns), metrics));
+        }
+        return Chunks.runInOrder(pool, tasks);
+    }
+
+    /**
+     * Each chunk reads its rows through its own read only view of the shared matrix
+     * into the worker's scratch rows, which are allocated once per worker and reused
+     * by all its chunks. This relies on BD2JTK not keeping the input rows once
+     * analyseData returns (it copies the series, see ListBD2JTK.cpySeries).
+     */
+    public List<BD2eJTKRes> analyseData(DataMatrix data, double[] zts, List<JTKPattern> patterns, int chunkSize) {
+
+        if (chunkSize < 1) throw new IllegalArgumentException("Chunk size must be positive not: "+chunkSize);
+
+        List<Callable<List<BD2eJTKRes>>> tasks = new ArrayList<>();
+        for (int ix = 0; ix < data.rows(); ix+=chunkSize) {
+            final int start = ix;
+            final int end = Math.min(ix+chunkSize, data.rows());
+            tasks.add(Instrumented.chunk(method, end-start, () -> {
+                double[][] rows = data.view().copyRows(start, end, scratchRows(end-start, chunkSize, data.cols()));
+                return analysers.get().analyseData(rows, zts, patterns);
+            }, metrics));
+        }
+        return Chunks.runInOrder(pool, tasks);
+    }
+
+    /**
+     * The worker's scratch rows, grown to capacity rows of cols when needed. A
+     * shorter (last) chunk gets a new outer array over the same row arrays.
+     */
+    double[][] scratchRows(int rows, int capacity, int cols) {
+
+        double[][] buffer = scratch.get();
+        if (buffer.length < capacity || (buffer.length > 0 && buffer[0].length != cols)) {
+            buffer = new double[capacity][cols];
+            scratch.set(buffer);
+        }
+        return buffer.length == rows ? buffer : Arrays.copyOf(buffer, rows);
+    }
+
+    /**
+     * As analyseData, but stops scheduling chunks once the job is cancelled or past
+     * its deadline, and returns the results finished by then.
+     */
+    public PartialResults<BD2eJTKRes> analyseData(double[][] data, double[] zts, List<JTKPattern> patterns, int chunkSize, JobControl control) {
+
+        if (chunkSize < 1) throw new IllegalArgumentException("Chunk size must be positive not: "+chunkSize);
+
+        List<Callable<List<BD2eJTKRes>>> tasks = new ArrayList<>();
+        int[] starts = new int[(data.length+chunkSize-1)/chunkSize];
+        for (int ix = 0; ix < data.length; ix+=chunkSize) {
+            double[][] part = Arrays.copyOfRange(data, ix, Math.min(ix+chunkSize, data.length));
+            starts[ix/chunkSize] = ix;
+            tasks.add(Instrumented.chunk(method, part.length, () -> analysers.get().analyseData(part, zts, patterns), metrics));
+        }
+        return Chunks.runControlled(pool, tasks, starts, data.length, control);
+    }
+}
@@ -0,0 +1,81 @@
+
+
+package ed.biodare.test;
+
+import ed.biodare.period.PPAMultiAnalyser;
+import ed.robust.dom.data.TimeSeries;
+import ed.robust.dom.tsprocessing.PPAResult;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.function.Supplier;
+
+/**
+ * Runs a PPA method on a shared pool instead of the analyser's own per call pool.
+ * Each worker thread keeps its own single threaded analyser instance, so analysers
+ * are created once per worker and not per call.
+ */
+public class SharedPPAAnalyser {
+
+    final ExecutorService pool;
+    final ThreadLocal<PPAMultiAnalyser> analysers;
+    final String method;
+    final AnalysisMetrics metrics;
+
+    public SharedPPAAnalyser(ExecutorService pool, Supplier<PPAMultiAnalyser> singleThreadedFactory) {
+        this(pool, singleThreadedFactory, "ppa", AnalysisMetrics.NOOP);
+    }
+
+    /**
+     * @param method name the chunks are reported under to the metrics
+     */
+    public SharedPPAAnalyser(ExecutorService pool, Supplier<PPAMultiAnalyser> singleThreadedFactory, String method, AnalysisMetrics metrics) {
+        this.pool = pool;
+        this.analysers = ThreadLocal.withInitial(singleThreadedFactory);
+        this.method = method;
+        this.metrics = metrics;
+    }
+
+    public List<PPAResult> analyse(List<TimeSeries> data, double periodMin, double periodMax, int chunkSize) {
+
+        List<Callable<List<PPAResult>>> tasks = new ArrayList<>();
+        for (List<TimeSeries> part : Chunks.split(data, chunkSize)) {
+            tasks.add(Instrumented.chunk(method, part.size(), () -> analysers.get().analyse(part, periodMin, periodMax, part.size(), 1), metrics));
+        }
+        return Chunks.runInOrder(pool, tasks);
+    }
+
+    /**
+     * As analyse, over series views. Each chunk is converted to TimeSeries by the
+     * worker analysing it, so the copies of the whole dataset are never held at once.
+     */
+    public List<PPAResult> analyseViews(List<SeriesView> data, double periodMin, double periodMax, int chunkSize) {
+
+        List<Callable<List<PPAResult>>> tasks = new ArrayList<>();
+        for (List<SeriesView> part : Chunks.split(data, chunkSize)) {
+            tasks.add(Instrumented.chunk(method, part.size(), () -> {
+                List<TimeSeries> series = new ArrayList<>(SeriesView.asTimeSeries(part));
+                return analysers.get().analyse(series, periodMin, periodMax, series.size(), 1);
+            }, metrics));
+        }
+        return Chunks.runInOrder(pool, tasks);
+    }
+
+    /**
+     * As analyse, but stops scheduling chunks once the job is cancelled or past its
+     * deadline, and returns the results finished by then.
+     */
+    public PartialResults<PPAResult> analyse(List<TimeSeries> data, double periodMin, double periodMax, int chunkSize, JobControl control) {
+
+        List<Callable<List<PPAResult>>> tasks = new ArrayList<>();
+        List<List<TimeSeries>> parts = Chunks.split(data, chunkSize);
+        int[] starts = new int[parts.size()];
+        for (int i = 0; i < parts.size(); i++) {
+            List<TimeSeries> part = parts.get(i);
+            starts[i] = i*chunkSize;
+            tasks.add(Instrumented.chunk(method, part.size(), () -> analysers.get().analyse(part, periodMin, periodMax, part.size(), 1), metrics));
+        }
+        return Chunks.runControlled(pool, tasks, starts, data.size(), control);
+    }
+}
@@ -0,0 +1,161 @@
+
+
+package ed.biodare.test;
+
+import ed.biodare.period.PPAMultiAnalyser;
+import ed.biodare.period.fft_nlls.FFTMultiAnalyser2;
+import ed.biodare.rhythm.ejtk.BD2JTK;
+import ed.biodare.rhythm.ejtk.BD2eJTKRes;
+import ed.biodare.rhythm.ejtk.patterns.JTKPattern;
+import ed.robust.dom.data.TimeSeries;
+import ed.robust.dom.tsprocessing.PPAResult;
+import ed.robust.error.RobustFormatException;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import org.apache.commons.math3.util.Pair;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Small jobs run with a pool created per call against the same jobs on a long lived shared pool.
+ * Use -p kind=VIRTUAL on JDK 21+ to include virtual threads.
+ */
+@Fork(1)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class SharedPoolBenchmark {
+
+
+
+    @State(Scope.Benchmark)
+    public static class ExecutionPlan {
+
+        @Param({ "1", "4", "8", "16", "32" })
+        public int threads;
+
+        @Param({ "FIXED", "WORK_STEALING" })
+        public AnalysisExecutors.Kind kind;
+
+        int chunk = 5;
+        int jobSize = 8*chunk;
+        int length = 50;
+        int patternSize = 10;
+
+        public int seriesChunk = 2;
+        public int seriesSize = 20;
+        public double periodMin = 18;
+        public double periodMax = 36;
+
+        List<double[]> patterns;
+        List<double[]> data;
+
+        List<TimeSeries> series;
+        double[][] jtkData;
+        double[] zts;
+        List<JTKPattern> jtkPatterns;
+
+        final MemVsComputationBenchmark tables = new MemVsComputationBenchmark();
+
+        ExecutorService shared;
+        SharedPPAAnalyser sharedFFT;
+        SharedJTKAnalyser sharedJTK;
+
+        @Setup(Level.Trial)
+        public void setUp() throws RobustFormatException, IOException {
+            patterns = MemVsComputationBenchmark.makeDatas(patternSize, length);
+            data = MemVsComputationBenchmark.makeDatas(jobSize, length);
+
+            series = new PPABenchmark.ExecutionPlan().readTSData(seriesSize);
+            jtkData = EJTKBenchmark.makeData(seriesSize, length);
+            zts = EJTKBenchmark.makeTimes(0, length, 1);
+            jtkPatterns = ReferenceTables.eJTKClassic();
+
+            shared = AnalysisExecutors.shared(kind, threads);
+            sharedFFT = new SharedPPAAnalyser(shared, () -> new FFTMultiAnalyser2(1));
+            sharedJTK = new SharedJTKAnalyser(shared, () -> new BD2JTK(1));
+        }
+    }
+
+    @Benchmark
+    public double tablesPerCallPool(ExecutionPlan params, Blackhole blackHole) {
+
+        ExecutorService pool = AnalysisExecutors.newPool(params.kind, params.threads);
+        try {
+            Pair<Long, Double> res = params.tables.clockTasks(tablesTasks(params), pool);
+            blackHole.consume(res);
+            return res.getSecond();
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Benchmark
+    public double tablesSharedPool(ExecutionPlan params, Blackhole blackHole) {
+
+        Pair<Long, Double> res = params.tables.clockTasks(tablesTasks(params), params.shared);
+        blackHole.consume(res);
+        return res.getSecond();
+    }
+
+    List<Callable<Double>> tablesTasks(ExecutionPlan params) {
+
+        List<Callable<Double>> tasks = new ArrayList<>();
+        for (List<double[]> part : Chunks.split(params.data, params.chunk)) {
+            tasks.add( () -> params.tables.convolute(part, params.patterns, false));
+        }
+        return tasks;
+    }
+
+    @Benchmark
+    public List<PPAResult> fftPerCallPool(ExecutionPlan params, Blackhole blackHole) {
+
+        PPAMultiAnalyser analyser = new FFTMultiAnalyser2(params.threads);
+
+        List<PPAResult> results = analyser.analyse(params.series, params.periodMin, params.periodMax, params.seriesChunk, params.threads);
+        blackHole.consume(results);
+        return results;
+    }
+
+    @Benchmark
+    public List<PPAResult> fftSharedPool(ExecutionPlan params, Blackhole blackHole) {
+
+        List<PPAResult> results = params.sharedFFT.analyse(params.series, params.periodMin, params.periodMax, params.seriesChunk);
+        blackHole.consume(results);
+        return results;
+    }
+
+    @Benchmark
+    public List<BD2eJTKRes> jtkPerCallPool(ExecutionPlan params, Blackhole blackHole) {
+
+        BD2JTK analyser = new BD2JTK(params.threads);
+
+        List<BD2eJTKRes> results = analyser.analyseData(params.jtkData, params.zts, params.jtkPatterns);
+        blackHole.consume(results);
+        return results;
+    }
+
+    @Benchmark
+    public List<BD2eJTKRes> jtkSharedPool(ExecutionPlan params, Blackhole blackHole) {
+
+        List<BD2eJTKRes> results = params.sharedJTK.analyseData(params.jtkData, params.zts, params.jtkPatterns, params.seriesChunk);
+        blackHole.consume(results);
+        return results;
+    }
+}
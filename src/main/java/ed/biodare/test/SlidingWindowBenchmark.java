@@ -0,0 +1,129 @@
+
+
+package ed.biodare.test;
+
+import ed.biodare.period.PPAMultiAnalyser;
+import ed.biodare.period.fft_nlls.FFTMultiAnalyser2;
+import ed.biodare.period.lspr.LSPRMultiAnalyser;
+import ed.robust.dom.data.TimeSeries;
+import ed.robust.dom.tsprocessing.PPAResult;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Period tracking in 3 day windows advanced by 6 hours over long recordings:
+ * every window cut into a new TimeSeries and analysed again by FFT-NLLS or LSPR,
+ * against the sliding window engine computing each window from scratch and
+ * reusing the previous window.
+ *
+ * All single threaded, the windows aux counter gives the windows per second.
+ */
+@Fork(1)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class SlidingWindowBenchmark {
+
+
+
+    @State(Scope.Benchmark)
+    public static class ExecutionPlan {
+
+        /** length of the recordings */
+        @Param({ "14", "28" })
+        public int days;
+
+        @Param({ "6" })
+        public double step;
+
+        public double windowLength = 72;
+        public int seriesCount = 16;
+        public int frequencies = 200;
+        public int chunkSize = 10;
+        public double periodMin = 18;
+        public double periodMax = 36;
+
+        List<SeriesView> series;
+        SlidingWindowPeriod scratch;
+        SlidingWindowPeriod reuse;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            int length = days*24;
+            series = Datasets.series(Datasets.Shape.COSINE, seriesCount, length, Datasets.seed("sliding", seriesCount, length))
+                    .stream().map(SeriesView::of).collect(Collectors.toList());
+            scratch = new SlidingWindowPeriod(windowLength, step, periodMin, periodMax, frequencies, false);
+            reuse = new SlidingWindowPeriod(windowLength, step, periodMin, periodMax, frequencies, true);
+        }
+    }
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class WindowCounter {
+
+        public long windows;
+    }
+
+    @Benchmark
+    public List<PPAResult> naiveFFT(ExecutionPlan params, WindowCounter counter, Blackhole blackHole) {
+        return naive(new FFTMultiAnalyser2(1), params, counter, blackHole);
+    }
+
+    @Benchmark
+    public List<PPAResult> naiveLSPR(ExecutionPlan params, WindowCounter counter, Blackhole blackHole) {
+        return naive(new LSPRMultiAnalyser(1), params, counter, blackHole);
+    }
+
+    @Benchmark
+    public int windowsScratch(ExecutionPlan params, WindowCounter counter, Blackhole blackHole) {
+        return engine(params.scratch, params, counter, blackHole);
+    }
+
+    @Benchmark
+    public int windowsReuse(ExecutionPlan params, WindowCounter counter, Blackhole blackHole) {
+        return engine(params.reuse, params, counter, blackHole);
+    }
+
+    List<PPAResult> naive(PPAMultiAnalyser analyser, ExecutionPlan params, WindowCounter counter, Blackhole blackHole) {
+
+        List<PPAResult> results = new ArrayList<>();
+        for (SeriesView series : params.series) {
+            List<TimeSeries> windows = params.scratch.windows(series).stream()
+                    .map(SeriesView::toTimeSeries)
+                    .collect(Collectors.toList());
+            results.addAll(analyser.analyse(windows, params.periodMin, params.periodMax, params.chunkSize, 1));
+            counter.windows += windows.size();
+        }
+        blackHole.consume(results);
+        return results;
+    }
+
+    int engine(SlidingWindowPeriod engine, ExecutionPlan params, WindowCounter counter, Blackhole blackHole) {
+
+        int windows = 0;
+        for (SeriesView series : params.series) {
+            List<SlidingWindowPeriod.WindowResult> results = engine.analyse(series);
+            windows += results.size();
+            blackHole.consume(results);
+        }
+        counter.windows += windows;
+        return windows;
+    }
+}
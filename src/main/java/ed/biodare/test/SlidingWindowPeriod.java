@@ -0,0 +1,464 @@
+
+
+package ed.biodare.test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Period tracking along a long recording in moving windows, e.g. 3 day windows
+ * advanced by 6 hours, without recomputing the overlap of consecutive windows.
+ *
+ * Every window gets a generalized (floating mean) Lomb-Scargle periodogram on a
+ * uniform frequency grid between 1/periodMax and 1/periodMin, and a nonlinear
+ * least squares cosine fit y = m + a cos(wt) + b sin(wt) with Levenberg-Marquardt.
+ *
+ * With reuse the periodogram sums are updated only with the points leaving and
+ * entering the window, and each fit starts from the parameters of the previous
+ * window instead of from the periodogram peak, so it typically converges in a few
+ * iterations. Without reuse every window is computed from scratch, as separate
+ * analyses would do. The parameters are carried between windows relative to the
+ * first time of the series, each fit itself is done around its window centre.
+ *
+ * The library analysers keep their algorithms internal, so this is not
+ * FFT-NLLS or LSPR itself but the same kind of estimate.
+ */
+public class SlidingWindowPeriod {
+
+    static final int MAX_ITERATIONS = 100;
+    static final double TOLERANCE = 1e-10;
+
+    final double windowLength;
+    final double step;
+    final double periodMin;
+    final double periodMax;
+    final int frequencies;
+    final boolean reuse;
+
+    /**
+     * @param windowLength duration of a window, in the time units of the series
+     * @param step shift between the starts of consecutive windows
+     * @param frequencies size of the periodogram grid
+     * @param reuse update the previous window instead of starting from scratch
+     */
+    public SlidingWindowPeriod(double windowLength, double step, double periodMin, double periodMax, int frequencies, boolean reuse) {
+        if (windowLength <= 0 || step <= 0) throw new IllegalArgumentException("Window and step must be positive not: "+windowLength+", "+step);
+        if (periodMin <= 0 || periodMax <= periodMin) throw new IllegalArgumentException("Invalid period range: "+periodMin+"-"+periodMax);
+        if (frequencies < 3) throw new IllegalArgumentException("Needs at least 3 frequencies not: "+frequencies);
+        this.windowLength = windowLength;
+        this.step = step;
+        this.periodMin = periodMin;
+        this.periodMax = periodMax;
+        this.frequencies = frequencies;
+        this.reuse = reuse;
+    }
+
+    public static final class WindowResult {
+
+        public final double start;
+        public final double end;
+        public final int points;
+        /** periodogram peak */
+        public final double lsPeriod;
+        public final double lsPower;
+        /** cosine fit */
+        public final double period;
+        public final double amplitude;
+        /** time of the fitted peak modulo the period, on the series time axis */
+        public final double phase;
+        public final double mean;
+        public final int iterations;
+
+        WindowResult(double start, double end, int points, double lsPeriod, double lsPower,
+                double period, double amplitude, double phase, double mean, int iterations) {
+            this.start = start;
+            this.end = end;
+            this.points = points;
+            this.lsPeriod = lsPeriod;
+            this.lsPower = lsPower;
+            this.period = period;
+            this.amplitude = amplitude;
+            this.phase = phase;
+            this.mean = mean;
+            this.iterations = iterations;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("[%.1f-%.1f) n=%d ls=%.3f fit=%.3f amp=%.3f phase=%.2f it=%d",
+                    start, end, points, lsPeriod, period, amplitude, phase, iterations);
+        }
+    }
+
+    /**
+     * Windows [start, start+windowLength) starting at the first time and then every
+     * step, as long as they end within the series. The times must be sorted.
+     */
+    public List<WindowResult> analyse(SeriesView series) {
+
+        List<WindowResult> results = new ArrayList<>();
+        int n = series.length();
+        if (n < 2) return results;
+
+        double origin = series.time(0);
+        double last = series.time(n-1);
+        // a window may end one sampling step after the last point
+        double slack = (last - origin) / (n-1) * (1 + 1e-9);
+
+        Periodogram periodogram = new Periodogram();
+        double[] fit = new double[4];
+        boolean warm = false;
+        int from = 0;
+        int to = 0;
+        for (int k = 0; ; k++) {
+            double start = origin + k*step;
+            double end = start + windowLength;
+            if (end > last + slack) break;
+
+            int newFrom = from;
+            while (newFrom < n && series.time(newFrom) < start) newFrom++;
+            int newTo = Math.max(to, newFrom);
+            while (newTo < n && series.time(newTo) < end) newTo++;
+
+            if (reuse && newFrom <= to) {
+                for (int i = from; i < newFrom; i++) periodogram.add(series.time(i) - origin, series.value(i), -1);
+                for (int i = to; i < newTo; i++) periodogram.add(series.time(i) - origin, series.value(i), 1);
+            } else {
+                periodogram.clear();
+                for (int i = newFrom; i < newTo; i++) periodogram.add(series.time(i) - origin, series.value(i), 1);
+            }
+            from = newFrom;
+            to = newTo;
+
+            WindowResult result = analyseWindow(series, origin, from, to, start, end, periodogram, fit, reuse && warm);
+            warm = !Double.isNaN(result.period);
+            results.add(result);
+        }
+        return results;
+    }
+
+    /**
+     * The windows analyse goes through, e.g. to analyse them separately.
+     */
+    public List<SeriesView> windows(SeriesView series) {
+
+        List<SeriesView> windows = new ArrayList<>();
+        int n = series.length();
+        if (n < 2) return windows;
+
+        double origin = series.time(0);
+        double last = series.time(n-1);
+        double slack = (last - origin) / (n-1) * (1 + 1e-9);
+        int from = 0;
+        int to = 0;
+        for (int k = 0; origin + k*step + windowLength <= last + slack; k++) {
+            double start = origin + k*step;
+            while (from < n && series.time(from) < start) from++;
+            to = Math.max(to, from);
+            while (to < n && series.time(to) < start + windowLength) to++;
+            windows.add(series.window(from, to));
+        }
+        return windows;
+    }
+
+    /**
+     * @param fit parameters of the cosine fit, the start values with warm and the result after
+     */
+    WindowResult analyseWindow(SeriesView series, double origin, int from, int to, double start, double end,
+            Periodogram periodogram, double[] fit, boolean warm) {
+
+        int points = to - from;
+        int peak = periodogram.peak();
+        if (points < 5 || peak < 0) {
+            return new WindowResult(start, end, points, Double.NaN, Double.NaN, Double.NaN, Double.NaN, Double.NaN, Double.NaN, 0);
+        }
+
+        // parabola through the peak and its neighbours, in frequency
+        double frequency = periodogram.frequency(peak);
+        if (peak > 0 && peak < frequencies-1) {
+            double left = periodogram.power[peak-1];
+            double mid = periodogram.power[peak];
+            double right = periodogram.power[peak+1];
+            double curvature = left - 2*mid + right;
+            if (curvature < 0) frequency += 0.5*(left - right) / curvature * periodogram.df;
+        }
+        double lsPeriod = 1 / frequency;
+
+        if (!warm) periodogram.linearFit(peak, fit);
+
+        // fitted around the window centre, far from the origin the frequency and
+        // the phase would be strongly correlated and the fit would take longer
+        double centre = (start + end) / 2 - origin;
+        double[] t = new double[points];
+        double[] y = new double[points];
+        for (int i = 0; i < points; i++) {
+            t[i] = series.time(from+i) - origin - centre;
+            y[i] = series.value(from+i);
+        }
+        CosineFit.shift(fit, centre);
+        int iterations = CosineFit.fit(t, y, fit);
+
+        // a warm start drifting off the range gets a second chance from the periodogram
+        if (warm && !inRange(2*Math.PI / fit[3])) {
+            periodogram.linearFit(peak, fit);
+            CosineFit.shift(fit, centre);
+            iterations += CosineFit.fit(t, y, fit);
+        }
+        CosineFit.shift(fit, -centre);
+
+        double w = fit[3];
+        double period = 2*Math.PI / w;
+        double amplitude = Math.hypot(fit[1], fit[2]);
+        double phase = Math.atan2(fit[2], fit[1]) / w + origin;
+        phase = ((phase % period) + period) % period;
+        return new WindowResult(start, end, points, lsPeriod, periodogram.power[peak],
+                inRange(period) ? period : Double.NaN, amplitude, phase, fit[0], iterations);
+    }
+
+    boolean inRange(double period) {
+        return period >= periodMin && period <= periodMax;
+    }
+
+    /**
+     * Sums of the generalized Lomb-Scargle periodogram over the points of the
+     * window for every grid frequency, so points can be added and removed.
+     */
+    final class Periodogram {
+
+        final double f0 = 1 / periodMax;
+        final double df = (1 / periodMin - 1 / periodMax) / (frequencies - 1);
+
+        final double[] c = new double[frequencies];
+        final double[] s = new double[frequencies];
+        final double[] yc = new double[frequencies];
+        final double[] ys = new double[frequencies];
+        final double[] cc = new double[frequencies];
+        final double[] ss = new double[frequencies];
+        final double[] cs = new double[frequencies];
+        final double[] power = new double[frequencies];
+        double sy;
+        double syy;
+        int n;
+
+        double frequency(int index) {
+            return f0 + index*df;
+        }
+
+        void clear() {
+            for (double[] sums : new double[][] {c, s, yc, ys, cc, ss, cs}) Arrays.fill(sums, 0);
+            sy = 0;
+            syy = 0;
+            n = 0;
+        }
+
+        /**
+         * Adds (sign 1) or removes (sign -1) a point. cos and sin along the grid come
+         * from rotating by the grid step, two trigonometric calls per point.
+         */
+        void add(double t, double y, int sign) {
+
+            double cosT = Math.cos(2*Math.PI*f0*t);
+            double sinT = Math.sin(2*Math.PI*f0*t);
+            double cosD = Math.cos(2*Math.PI*df*t);
+            double sinD = Math.sin(2*Math.PI*df*t);
+            double weighted = sign*y;
+            for (int j = 0; j < frequencies; j++) {
+                c[j] += sign*cosT;
+                s[j] += sign*sinT;
+                yc[j] += weighted*cosT;
+                ys[j] += weighted*sinT;
+                cc[j] += sign*cosT*cosT;
+                ss[j] += sign*sinT*sinT;
+                cs[j] += sign*cosT*sinT;
+
+                double cos = cosT*cosD - sinT*sinD;
+                sinT = sinT*cosD + cosT*sinD;
+                cosT = cos;
+            }
+            sy += weighted;
+            syy += weighted*y;
+            n += sign;
+        }
+
+        /**
+         * Fills the normalized power and returns the index of its maximum, or -1.
+         */
+        int peak() {
+
+            if (n < 3) return -1;
+            double my = sy / n;
+            double yy = syy / n - my*my;
+            if (yy <= 0) return -1;
+
+            int best = -1;
+            for (int j = 0; j < frequencies; j++) {
+                double mc = c[j] / n;
+                double ms = s[j] / n;
+                double ycj = yc[j] / n - my*mc;
+                double ysj = ys[j] / n - my*ms;
+                double ccj = cc[j] / n - mc*mc;
+                double ssj = ss[j] / n - ms*ms;
+                double csj = cs[j] / n - mc*ms;
+                double d = ccj*ssj - csj*csj;
+                power[j] = d > 0 ? (ssj*ycj*ycj + ccj*ysj*ysj - 2*csj*ycj*ysj) / (yy*d) : 0;
+                if (best < 0 || power[j] > power[best]) best = j;
+            }
+            return best;
+        }
+
+        /**
+         * Least squares m, a, b at the grid frequency, with its angular frequency.
+         */
+        void linearFit(int j, double[] fit) {
+
+            double my = sy / n;
+            double mc = c[j] / n;
+            double ms = s[j] / n;
+            double ycj = yc[j] / n - my*mc;
+            double ysj = ys[j] / n - my*ms;
+            double ccj = cc[j] / n - mc*mc;
+            double ssj = ss[j] / n - ms*ms;
+            double csj = cs[j] / n - mc*ms;
+            double d = ccj*ssj - csj*csj;
+            double a = (ycj*ssj - ysj*csj) / d;
+            double b = (ysj*ccj - ycj*csj) / d;
+            fit[0] = my - a*mc - b*ms;
+            fit[1] = a;
+            fit[2] = b;
+            fit[3] = 2*Math.PI*frequency(j);
+        }
+    }
+
+    /**
+     * Levenberg-Marquardt fit of y = m + a cos(wt) + b sin(wt) over p = {m, a, b, w}.
+     */
+    static final class CosineFit {
+
+        private CosineFit() {}
+
+        /**
+         * Improves the parameters in place.
+         *
+         * @return iterations done
+         */
+        static int fit(double[] t, double[] y, double[] p) {
+
+            double lambda = 1e-3;
+            double sse = sse(t, y, p);
+            double[][] a = new double[4][4];
+            double[] g = new double[4];
+            double[] trial = new double[4];
+            int iterations = 0;
+
+            while (iterations < MAX_ITERATIONS) {
+                iterations++;
+                normalEquations(t, y, p, a, g);
+
+                boolean improved = false;
+                while (lambda < 1e10) {
+                    double[][] damped = new double[4][];
+                    for (int i = 0; i < 4; i++) {
+                        damped[i] = a[i].clone();
+                        damped[i][i] += lambda*Math.max(a[i][i], 1e-12);
+                    }
+                    double[] delta = solve(damped, g.clone());
+                    for (int i = 0; i < 4; i++) trial[i] = p[i] + delta[i];
+
+                    double trialSse = sse(t, y, trial);
+                    if (trialSse <= sse) {
+                        double change = sse - trialSse;
+                        System.arraycopy(trial, 0, p, 0, 4);
+                        lambda = Math.max(lambda / 10, 1e-12);
+                        improved = change > TOLERANCE*(sse + TOLERANCE);
+                        sse = trialSse;
+                        break;
+                    }
+                    lambda *= 10;
+                }
+                if (!improved) break;
+            }
+            return iterations;
+        }
+
+        /**
+         * Moves the time origin of the parameters forward by the shift.
+         */
+        static void shift(double[] p, double shift) {
+            double cos = Math.cos(p[3]*shift);
+            double sin = Math.sin(p[3]*shift);
+            double a = p[1]*cos + p[2]*sin;
+            double b = p[2]*cos - p[1]*sin;
+            p[1] = a;
+            p[2] = b;
+        }
+
+        static double sse(double[] t, double[] y, double[] p) {
+            double sum = 0;
+            for (int i = 0; i < t.length; i++) {
+                double r = y[i] - (p[0] + p[1]*Math.cos(p[3]*t[i]) + p[2]*Math.sin(p[3]*t[i]));
+                sum += r*r;
+            }
+            return sum;
+        }
+
+        /**
+         * J'J and J'r of the residuals.
+         */
+        static void normalEquations(double[] t, double[] y, double[] p, double[][] a, double[] g) {
+
+            for (double[] row : a) Arrays.fill(row, 0);
+            Arrays.fill(g, 0);
+            double[] j = new double[4];
+            for (int i = 0; i < t.length; i++) {
+                double cos = Math.cos(p[3]*t[i]);
+                double sin = Math.sin(p[3]*t[i]);
+                j[0] = 1;
+                j[1] = cos;
+                j[2] = sin;
+                j[3] = t[i]*(p[2]*cos - p[1]*sin);
+                double r = y[i] - (p[0] + p[1]*cos + p[2]*sin);
+                for (int k = 0; k < 4; k++) {
+                    g[k] += j[k]*r;
+                    for (int l = 0; l <= k; l++) a[k][l] += j[k]*j[l];
+                }
+            }
+            for (int k = 0; k < 4; k++) {
+                for (int l = k+1; l < 4; l++) a[k][l] = a[l][k];
+            }
+        }
+
+        /**
+         * Gaussian elimination with partial pivoting, a and b are overwritten.
+         */
+        static double[] solve(double[][] a, double[] b) {
+
+            int n = b.length;
+            for (int col = 0; col < n; col++) {
+                int pivot = col;
+                for (int r = col+1; r < n; r++) {
+                    if (Math.abs(a[r][col]) > Math.abs(a[pivot][col])) pivot = r;
+                }
+                double[] row = a[col];
+                a[col] = a[pivot];
+                a[pivot] = row;
+                double v = b[col];
+                b[col] = b[pivot];
+                b[pivot] = v;
+
+                for (int r = col+1; r < n; r++) {
+                    double factor = a[r][col] / a[col][col];
+                    for (int k = col; k < n; k++) a[r][k] -= factor*a[col][k];
+                    b[r] -= factor*b[col];
+                }
+            }
+            double[] x = new double[n];
+            for (int r = n-1; r >= 0; r--) {
+                double sum = b[r];
+                for (int k = r+1; k < n; k++) sum -= a[r][k]*x[k];
+                x[r] = sum / a[r][r];
+            }
+            return x;
+        }
+    }
+}
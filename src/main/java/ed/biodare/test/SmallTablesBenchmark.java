@@ -38,12 +38,10 @@ import java.util.List;
 import java.util.Map;
 import java.util.Random;
 import java.util.concurrent.Callable;
-import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
-import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
-import java.util.stream.Collectors;
+import java.util.function.ToDoubleFunction;
 import org.apache.commons.math3.util.Pair;
 import org.openjdk.jmh.annotations.Benchmark;
 import org.openjdk.jmh.annotations.BenchmarkMode;
@@ -84,12 +82,14 @@ public class SmallTablesBenchmark {
         int length = 50; 
         
         Map<Pair<Integer, Integer>, double[]> patterns;
+        PatternMatrix patternMatrix;
         double[][] data;
 
-        @Setup(Level.Invocation)
+        @Setup(Level.Trial)
         public void setUp() {
             patterns = makePatterns(patternSize, length);
-            data = makeData(dataSize, length);
+            patternMatrix = PatternMatrix.of(patterns);
+            data = Datasets.cachedUniform(dataSize, length, 0.1, 10.1, Datasets.seed("tables", dataSize, length));
         }
     }
     
@@ -111,35 +111,68 @@ public class SmallTablesBenchmark {
         return res.getFirst();
     }    
 
-    Pair<Long, Double> clockTasks(List<Callable<List<Pair<Pair<Integer,Integer>,Double>>>> tasks, int threads) {
+    // primitive kernel has no memalloc variant, it always runs the compute only path
+    //@Benchmark
+    public long tablesRunPrimitive(ExecutionPlan params, Blackhole blackHole) {
         
-        ExecutorService pool = Executors.newFixedThreadPool(threads);
+
+        BestMatches matches = new BestMatches(params.data.length);
+        List<Callable<Double>> tasks = new ArrayList<>();
         
-        long sT = System.currentTimeMillis();
+        for (int ix = 0; ix < params.data.length; ix+=params.chunk) {
+            
+            final int start = ix;
+            final int end = Math.min(ix+params.chunk, params.data.length);
+            tasks.add( () -> {
+                PatternMatcher.bestMatches(params.data, start, end, params.patternMatrix, matches);
+                double val = 0;
+                for (int i = start; i < end; i++) val += matches.value(i);
+                return val;
+            });
+        }
         
-        List<Future<List<Pair<Pair<Integer, Integer>, Double>>>> results = tasks.stream()
-                .map( task -> pool.submit(task))
-                .collect(Collectors.toList());
+        Pair<Long, Double> res = clockTasks(tasks, params.threads, Double::doubleValue);
+        blackHole.consume(res);
+        return res.getFirst();
+    }    
+
+    Pair<Long, Double> clockTasks(List<Callable<List<Pair<Pair<Integer,Integer>,Double>>>> tasks, int threads) {
         
+        return clockTasks(tasks, threads, SmallTablesBenchmark::sum);
+    }
+
+    Pair<Long, Double> clockTasks(List<Callable<List<Pair<Pair<Integer,Integer>,Double>>>> tasks, ExecutorService pool) {
         
-        pool.shutdown();
+        return clockTasks(tasks, pool, SmallTablesBenchmark::sum);
+    }
+
+    <T> Pair<Long, Double> clockTasks(List<Callable<T>> tasks, int threads, ToDoubleFunction<T> measure) {
+        
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
         try {
-            
-            double val = 0;
-            
-            for (Future<List<Pair<Pair<Integer, Integer>, Double>>> f : results) {
-                
-                val+=f.get().stream().mapToDouble( p -> p.getValue()).sum();
-            }
-            
-            long dur = System.currentTimeMillis() - sT;
-            return new Pair<>(dur, val);
-        } catch (InterruptedException| ExecutionException e) {
-            pool.shutdownNow();
-            throw new RuntimeException("Interrupted analysis in parallel "+e.getMessage(),e);
+            return clockTasks(tasks, pool, measure);
+        } finally {
+            pool.shutdown();
         }
+    }
+
+    <T> Pair<Long, Double> clockTasks(List<Callable<T>> tasks, ExecutorService pool, ToDoubleFunction<T> measure) {
         
+        long sT = System.currentTimeMillis();
+        
+        // summed as the chunks complete, not in submission order
+        double val = new CompletionAggregator<T>(pool, measure)
+                .submitAll(tasks)
+                .awaitSum();
+        
+        long dur = System.currentTimeMillis() - sT;
+        return new Pair<>(dur, val);
     }    
+
+    static double sum(List<Pair<Pair<Integer,Integer>,Double>> res) {
+        return res.stream().mapToDouble( p -> p.getValue()).sum();
+    }
+
     
     List<Pair<Pair<Integer,Integer>,Double>> calculate(double[][] datas, int startIx, int endIx, Map<Pair<Integer, Integer>, 
             double[]> patterns, boolean memalloc) {
@@ -186,7 +219,7 @@ public class SmallTablesBenchmark {
     
     static Map<Pair<Integer, Integer>, double[]> makePatterns(int count, int length) {
         
-        Random rnd = new Random();
+        Random rnd = new Random(Datasets.seed("patterns", count, length));
         Map<Pair<Integer, Integer>, double[]> patterns = new HashMap<>();
         
         while (patterns.size() < count) {
@@ -201,14 +234,6 @@ public class SmallTablesBenchmark {
     
     static double[][] makeData(int count, int length) {
 
-        Random rnd = new Random();
-        double[][] data = new double[count][];
-        
-        for (int i = 0; i< count; i++) {
-            double[] row = new double[length];
-            for (int k =0;k < length; k++) row[k] = 0.1+rnd.nextDouble()*10;
-            data[i] = row;
-        }
-        return data;
+        return Datasets.uniform(count, length, 0.1, 10.1, Datasets.seed("tables", count, length));
     }    
 }
@@ -0,0 +1,105 @@
+
+
+package ed.biodare.test;
+
+import ed.biodare.period.PPAMultiAnalyser;
+import ed.robust.dom.data.TimeSeries;
+import ed.robust.dom.tsprocessing.PPAResult;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+
+/**
+ * PPA over a stream of series: chunks are handed to the pool as soon as they are
+ * parsed and results are emitted as each chunk completes.
+ *
+ * At most maxPendingChunks chunks are queued or running, the reader blocks
+ * when the analysis falls behind, so only a bounded part of the input is ever
+ * held in memory.
+ */
+public class StreamingPPA {
+
+    public interface ResultSink {
+        /**
+         * Called from the worker threads, firstIndex is the position of the first
+         * series of the chunk in the input stream.
+         */
+        void accept(int firstIndex, List<PPAResult> results);
+    }
+
+    final ExecutorService pool;
+    final ThreadLocal<PPAMultiAnalyser> analysers;
+    final int chunkSize;
+    final int maxPendingChunks;
+
+    public StreamingPPA(ExecutorService pool, Supplier<PPAMultiAnalyser> singleThreadedFactory, int chunkSize, int maxPendingChunks) {
+        if (chunkSize < 1) throw new IllegalArgumentException("Chunk size must be positive not: "+chunkSize);
+        if (maxPendingChunks < 1) throw new IllegalArgumentException("Pending chunks must be positive not: "+maxPendingChunks);
+        this.pool = pool;
+        this.analysers = ThreadLocal.withInitial(singleThreadedFactory);
+        this.chunkSize = chunkSize;
+        this.maxPendingChunks = maxPendingChunks;
+    }
+
+    /**
+     * @return number of analysed series
+     */
+    public int analyse(SeriesRowsReader reader, double periodMin, double periodMax, ResultSink sink) throws IOException {
+
+        Semaphore pending = new Semaphore(maxPendingChunks);
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+
+        int read = 0;
+        List<TimeSeries> chunk = new ArrayList<>(chunkSize);
+        try {
+            for (TimeSeries ts = reader.next(); ts != null && failure.get() == null; ts = reader.next()) {
+                chunk.add(ts);
+                read++;
+                if (chunk.size() == chunkSize) {
+                    submit(chunk, read - chunk.size(), periodMin, periodMax, sink, pending, failure);
+                    chunk = new ArrayList<>(chunkSize);
+                }
+            }
+            if (!chunk.isEmpty()) {
+                submit(chunk, read - chunk.size(), periodMin, periodMax, sink, pending, failure);
+            }
+
+            pending.acquire(maxPendingChunks);
+            pending.release(maxPendingChunks);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted streaming analysis "+e.getMessage(), e);
+        }
+
+        if (failure.get() != null) {
+            throw new RuntimeException("Streaming analysis failed "+failure.get().getMessage(), failure.get());
+        }
+        return read;
+    }
+
+    void submit(List<TimeSeries> chunk, int firstIndex, double periodMin, double periodMax, ResultSink sink,
+            Semaphore pending, AtomicReference<Throwable> failure) throws InterruptedException {
+
+        pending.acquire();
+        try {
+            pool.execute( () -> {
+                try {
+                    if (failure.get() == null) {
+                        sink.accept(firstIndex, analysers.get().analyse(chunk, periodMin, periodMax, chunk.size(), 1));
+                    }
+                } catch (RuntimeException | Error e) {
+                    failure.compareAndSet(null, e);
+                } finally {
+                    pending.release();
+                }
+            });
+        } catch (RuntimeException e) {
+            pending.release();
+            throw e;
+        }
+    }
+}
@@ -0,0 +1,163 @@
+
+
+package ed.biodare.test;
+
+import ed.biodare.period.PPAMultiAnalyser;
+import ed.biodare.period.fft_nlls.FFTMultiAnalyser2;
+import ed.robust.dom.data.TimeSeries;
+import ed.robust.dom.tsprocessing.PPAResult;
+import ed.robust.error.RobustFormatException;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Load-all-then-analyse against streaming FFT-NLLS over the same row layout export.
+ *
+ * Besides the total time, the aux counters report time to the first result
+ * (firstResultMicros) and the peak heap during the invocation (peakHeapMB,
+ * sum of the pool peaks so an upper bound), both summed over invocations and
+ * to be divided by the invocations counter.
+ */
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class StreamingPPABenchmark {
+
+
+
+    @State(Scope.Benchmark)
+    public static class ExecutionPlan {
+
+        @Param({ "1", "4", "8" })
+        public int threads;
+
+        @Param({ "1920", "19200" })
+        public int dataSize;
+
+        @Param({ "10" })
+        public int chunkSize = 10;
+
+        public int maxPendingChunks = 4;
+        public double periodMin = 18;
+        public double periodMax = 36;
+
+        Path file;
+        ExecutorService pool;
+        StreamingPPA streaming;
+
+        @Setup(Level.Trial)
+        public void setUp() throws RobustFormatException, IOException {
+            file = Files.createTempFile("ppa-rows", ".csv");
+            SeriesRowsReader.write(new PPABenchmark.ExecutionPlan().readTSData(dataSize), file);
+
+            pool = AnalysisExecutors.newPool(AnalysisExecutors.Kind.FIXED, threads);
+            // each worker can hold a running chunk plus the queued ones
+            streaming = new StreamingPPA(pool, () -> new FFTMultiAnalyser2(1), chunkSize, threads+maxPendingChunks);
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() throws IOException {
+            pool.shutdown();
+            Files.deleteIfExists(file);
+        }
+    }
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class MemoryCounters {
+
+        public long firstResultMicros;
+        public long peakHeapMB;
+        public long invocations;
+
+        long start;
+        final AtomicLong firstResult = new AtomicLong();
+
+        @Setup(Level.Invocation)
+        public void reset() {
+            System.gc();
+            for (MemoryPoolMXBean bean : ManagementFactory.getMemoryPoolMXBeans()) {
+                if (bean.getType() == MemoryType.HEAP) bean.resetPeakUsage();
+            }
+            firstResult.set(0);
+            start = System.nanoTime();
+        }
+
+        void resultReady() {
+            firstResult.compareAndSet(0, System.nanoTime());
+        }
+
+        void done() {
+            long peak = 0;
+            for (MemoryPoolMXBean bean : ManagementFactory.getMemoryPoolMXBeans()) {
+                if (bean.getType() == MemoryType.HEAP) peak += bean.getPeakUsage().getUsed();
+            }
+            peakHeapMB += peak / (1024*1024);
+            firstResultMicros += (firstResult.get() - start) / 1000;
+            invocations++;
+        }
+    }
+
+    @Benchmark
+    public List<PPAResult> loadAll(ExecutionPlan params, MemoryCounters counters, Blackhole blackHole) throws IOException {
+
+        List<TimeSeries> data;
+        try (SeriesRowsReader reader = SeriesRowsReader.open(params.file)) {
+            data = reader.readAll();
+        }
+
+        PPAMultiAnalyser analyser = new FFTMultiAnalyser2(params.threads);
+        List<PPAResult> results = analyser.analyse(data, params.periodMin, params.periodMax, params.chunkSize, params.threads);
+        counters.resultReady();
+        counters.done();
+
+        blackHole.consume(results);
+        return results;
+    }
+
+    @Benchmark
+    public int streaming(ExecutionPlan params, MemoryCounters counters, Blackhole blackHole) throws IOException {
+
+        // the sink runs on the pool workers and the Blackhole may only be used on
+        // this thread, so the results are folded into thread safe state instead
+        AtomicInteger analysed = new AtomicInteger();
+        LongAdder checksum = new LongAdder();
+        try (SeriesRowsReader reader = SeriesRowsReader.open(params.file)) {
+            params.streaming.analyse(reader, params.periodMin, params.periodMax, (first, results) -> {
+                counters.resultReady();
+                analysed.addAndGet(results.size());
+                for (PPAResult result : results) checksum.add(System.identityHashCode(result));
+            });
+        }
+        counters.done();
+        blackHole.consume(checksum.sum());
+        return analysed.get();
+    }
+}
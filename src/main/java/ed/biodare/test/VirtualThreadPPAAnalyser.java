@@ -0,0 +1,72 @@
+
+
+package ed.biodare.test;
+
+import ed.biodare.period.PPAMultiAnalyser;
+import ed.robust.dom.data.TimeSeries;
+import ed.robust.dom.tsprocessing.PPAResult;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.function.Supplier;
+
+/**
+ * Runs every chunk of a request on its own virtual thread, the actual computation
+ * waits for a CPU permit, so many concurrent requests share the cores instead of
+ * each starting its own platform pool.
+ *
+ * Virtual threads are not reused, so single threaded analysers are pooled here
+ * rather than kept per thread. Needs JDK 21+ (see the loom profile).
+ */
+public class VirtualThreadPPAAnalyser {
+
+    final Semaphore cpuPermits;
+    final Supplier<PPAMultiAnalyser> factory;
+    final ConcurrentLinkedQueue<PPAMultiAnalyser> analysers = new ConcurrentLinkedQueue<>();
+
+    public VirtualThreadPPAAnalyser(Supplier<PPAMultiAnalyser> singleThreadedFactory) {
+        this(singleThreadedFactory, CpuPermits.global());
+    }
+
+    public VirtualThreadPPAAnalyser(Supplier<PPAMultiAnalyser> singleThreadedFactory, Semaphore cpuPermits) {
+        this.factory = singleThreadedFactory;
+        this.cpuPermits = cpuPermits;
+    }
+
+    public List<PPAResult> analyse(List<TimeSeries> data, double periodMin, double periodMax, int chunkSize) {
+
+        List<Callable<List<PPAResult>>> tasks = new ArrayList<>();
+        for (List<TimeSeries> part : Chunks.split(data, chunkSize)) {
+            tasks.add( () -> analyseChunk(part, periodMin, periodMax));
+        }
+
+        ExecutorService pool = AnalysisExecutors.newVirtualPool();
+        try {
+            return Chunks.runInOrder(pool, tasks);
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    List<PPAResult> analyseChunk(List<TimeSeries> part, double periodMin, double periodMax) throws InterruptedException {
+
+        cpuPermits.acquire();
+        PPAMultiAnalyser analyser = null;
+        try {
+            analyser = borrow();
+            return analyser.analyse(part, periodMin, periodMax, part.size(), 1);
+        } finally {
+            // the permits are global, a failing factory must not leak one
+            if (analyser != null) analysers.offer(analyser);
+            cpuPermits.release();
+        }
+    }
+
+    PPAMultiAnalyser borrow() {
+        PPAMultiAnalyser analyser = analysers.poll();
+        return analyser != null ? analyser : factory.get();
+    }
+}